@@ -0,0 +1,53 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.Deisotoper;
+import lipid.IonizationMode;
+import lipid.Lipid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Annotation#detectAdductFromSignals} for groups of peaks of different sizes. The supporting [M+Na]+ peak is
+ * always there, so the cost depends on how soon [M+H]+ is tried and on the binary searches in the group
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AdductDetectionBenchmark {
+
+    private static final double MZ_TOLERANCE = 0.01;
+
+    @Param({"2", "8", "32", "128", "512"})
+    public int groupSize;
+
+    private Annotation annotation;
+    private final Deisotoper deisotoper = new Deisotoper(MZ_TOLERANCE, 2);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        double mz = 760.5851;
+        annotation = new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1), mz, 100000, 6.5,
+                IonizationMode.POSITIVE, BenchmarkData.peakGroup(mz, groupSize, random));
+    }
+
+    @Benchmark
+    public String detectAdduct() {
+        return annotation.detectAdductFromSignals(IonizationMode.POSITIVE, MZ_TOLERANCE);
+    }
+
+    @Benchmark
+    public String deisotopeAndDetectAdduct() {
+        return annotation.detectAdductFromSignals(IonizationMode.POSITIVE, MZ_TOLERANCE, deisotoper);
+    }
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.IonizationMode;
+import lipid.Lipid;
+import lipid.Peak;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeded random inputs of the benchmarks, so every run measures the same data
+ */
+final class BenchmarkData {
+
+    static final long SEED = 42;
+
+    private static final String[] LIPID_TYPES = {"PG", "PE", "PI", "PA", "PS", "PC", "TG"};
+
+    private BenchmarkData() {
+    }
+
+    static double[] mzs(int count, Random random) {
+        double[] mzs = new double[count];
+        for (int i = 0; i < count; i++) {
+            mzs[i] = 200 + random.nextDouble() * 1800;
+        }
+        return mzs;
+    }
+
+    /**
+     * @return annotations of lipids with the usual carbon and double bond ranges and RTs between 0 and 20 minutes
+     */
+    static List<Annotation> annotations(int count, Random random) {
+        List<Annotation> annotations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String lipidType = LIPID_TYPES[random.nextInt(LIPID_TYPES.length)];
+            int carbons = 28 + random.nextInt(30);
+            int doubleBonds = random.nextInt(8);
+            Lipid lipid = new Lipid(i, lipidType + " " + carbons + ":" + doubleBonds, "C" + carbons + "H80NO8P",
+                    lipidType, carbons, doubleBonds);
+            annotations.add(new Annotation(lipid, 400 + random.nextDouble() * 600, 1000 + random.nextDouble() * 1e6,
+                    Math.round(random.nextDouble() * 2000) / 100d, IonizationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    /**
+     * @return annotations of lipids with 10 to 2009 carbons and 0 to 499 double bonds, so few of them share both
+     */
+    static List<Annotation> sparseAnnotations(int count, Random random) {
+        List<Annotation> annotations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String lipidType = LIPID_TYPES[random.nextInt(LIPID_TYPES.length)];
+            int carbons = 10 + random.nextInt(2000);
+            int doubleBonds = random.nextInt(500);
+            Lipid lipid = new Lipid(i, lipidType + " " + carbons + ":" + doubleBonds, null, lipidType, carbons,
+                    doubleBonds);
+            annotations.add(new Annotation(lipid, 400 + random.nextDouble() * 600, 1000 + random.nextDouble() * 1e6,
+                    Math.round(random.nextDouble() * 2000) / 100d, IonizationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    /**
+     * @return the [M+H]+ peak of the annotation, its [M+Na]+ peak and groupSize - 2 unrelated peaks
+     */
+    static Set<Peak> peakGroup(double mz, int groupSize, Random random) {
+        Set<Peak> peaks = new HashSet<>();
+        peaks.add(new Peak(mz, 100000));
+        peaks.add(new Peak(mz - 1.007276 + 22.989218, 80000));
+        while (peaks.size() < groupSize) {
+            peaks.add(new Peak(mz - 300 + random.nextDouble() * 600, random.nextDouble() * 50000));
+        }
+        return peaks;
+    }
+}
@@ -0,0 +1,35 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler (allocation rate and bytes allocated per operation), so every result
+ * shows both the time and the garbage of the operation. The arguments are the usual JMH ones, e.g.
+ * {@code java -jar benchmarks.jar ScoringBenchmark -p annotations=1000 -rf json}
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions commandLine;
+        try {
+            commandLine = new CommandLineOptions(args);
+        } catch (org.openjdk.jmh.runner.options.CommandLineOptionException e) {
+            System.err.println("Error parsing the arguments: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .forks(commandLine.getForkCount().orElse(1))
+                .warmupIterations(commandLine.getWarmupIterations().orElse(3))
+                .measurementIterations(commandLine.getMeasurementIterations().orElse(5))
+                .build();
+        new Runner(options).run();
+    }
+}
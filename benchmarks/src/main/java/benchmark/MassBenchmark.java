@@ -0,0 +1,75 @@
+package benchmark;
+
+import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import adduct.MassTransformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between mz and monoisotopic mass, per mz
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MassBenchmark {
+
+    private static final int MZS = 1024;
+
+    @Param({"[M+H]+", "[M+2H]2+", "[2M+Na]+", "[M-H]−"})
+    public String adduct;
+
+    private AdductDescriptor descriptor;
+    private double[] mzs;
+    private double[] masses;
+
+    @Setup
+    public void setUp() {
+        descriptor = AdductList.getDescriptor(adduct);
+        mzs = BenchmarkData.mzs(MZS, new Random(BenchmarkData.SEED));
+        masses = new double[MZS];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MZS)
+    public void monoisotopicMassFromMZ(Blackhole blackhole) {
+        for (double mz : mzs) {
+            blackhole.consume(Adduct.getMonoisotopicMassFromMZ(mz, adduct));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MZS)
+    public void mzFromMonoisotopicMass(Blackhole blackhole) {
+        for (double mz : mzs) {
+            blackhole.consume(Adduct.getMZFromMonoisotopicMass(mz, adduct));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MZS)
+    public void monoisotopicMassFromMZWithDescriptor(Blackhole blackhole) {
+        for (double mz : mzs) {
+            blackhole.consume(Adduct.getMonoisotopicMassFromMZ(mz, descriptor));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MZS)
+    public double[] bulkMonoisotopicMasses() {
+        MassTransformation.toMonoisotopicMasses(mzs, descriptor, masses);
+        return masses;
+    }
+}
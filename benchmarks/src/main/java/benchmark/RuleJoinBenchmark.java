@@ -0,0 +1,57 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.LipidScoreUnit;
+import lipid.ScoringEngine;
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joins of the Drools elution rules. The lipids have wide carbon and double bond ranges, so few pairs of annotations
+ * share them and the time is the cost of finding the pairs (what the indexes of lipids.drl avoid) instead of the
+ * firings that dominate {@link ScoringBenchmark}. Without indexes every fire() would test all the n^2 pairs
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class RuleJoinBenchmark {
+
+    @Param({"10000", "50000"})
+    public int annotations;
+
+    private RuleUnitInstance<LipidScoreUnit> instance;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        List<Annotation> sample = BenchmarkData.sparseAnnotations(annotations, new Random(BenchmarkData.SEED));
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit(ScoringEngine.DROOLS);
+        for (Annotation annotation : sample) {
+            lipidScoreUnit.getAnnotations().add(annotation);
+        }
+        instance = RuleUnitProvider.get().createRuleUnitInstance(lipidScoreUnit);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        instance.close();
+    }
+
+    @Benchmark
+    public int fire() {
+        return instance.fire();
+    }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.LipidScoreUnit;
+import lipid.ScoringEngine;
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elution order scoring of one sample. Only the firing is measured: the annotations are created and inserted (with
+ * their scores at 0) before every invocation, and with Drools the rule unit instance is created before as well.
+ * The default sizes stop at 10k annotations. 100k takes seconds per invocation with Drools (and the whole run takes
+ * more than 25 minutes), pass it explicitly with few iterations: -p annotations=100000 -wi 1 -i 3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ScoringBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int annotations;
+
+    @Param({"DROOLS", "SORT_AND_SWEEP"})
+    public ScoringEngine scoringEngine;
+
+    private LipidScoreUnit lipidScoreUnit;
+    private RuleUnitInstance<LipidScoreUnit> instance;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        List<Annotation> sample = BenchmarkData.annotations(annotations, new Random(BenchmarkData.SEED));
+        lipidScoreUnit = new LipidScoreUnit(scoringEngine);
+        for (Annotation annotation : sample) {
+            lipidScoreUnit.getAnnotations().add(annotation);
+        }
+        if (scoringEngine == ScoringEngine.DROOLS) {
+            instance = RuleUnitProvider.get().createRuleUnitInstance(lipidScoreUnit);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    @Benchmark
+    public long fire() {
+        return instance != null ? instance.fire() : lipidScoreUnit.score();
+    }
+}
@@ -30,20 +30,24 @@ public class Adduct {
 
     // Create the necessary regex to obtain the multimer (number before the M) and the charge (number before the + or - (if no number, the charge is 1).
 
-    public static Double getMonoisotopicMassFromMZ(Double mz, String adduct) {
-
-
-        Double mzoffset = AdductList.MAPMZPOSITIVEADDUCTS.get(adduct);
-        if(mzoffset == null) {
-            mzoffset = AdductList.MAPMZNEGATIVEADDUCTS.get(adduct);
-        }
-        if(mzoffset == null) {
+    public static double getMonoisotopicMassFromMZ(double mz, String adduct) {
+        AdductDescriptor descriptor = AdductList.getDescriptor(adduct);
+        if(descriptor == null) {
             throw new IllegalArgumentException("No Adduct Found for " + adduct);
         }
+        return descriptor.toMonoisotopicMass(mz);
+    }
 
-        int multimer = extractMultimer(adduct); // regex "(\\d+)M"
-        int charge = extractCharge(adduct);     // regex "(\\d+)([+-]$)"
-         return (mz + mzoffset) * charge / multimer;
+    /**
+     * Calculate the mass to search depending on the adduct hypothesis, without any lookup
+     *
+     * @param mz mz
+     * @param adduct pre-parsed adduct obtained from {@link AdductList}
+     *
+     * @return the monoisotopic mass of the experimental mass mz with the adduct @param adduct
+     */
+    public static double getMonoisotopicMassFromMZ(double mz, AdductDescriptor adduct) {
+        return adduct.toMonoisotopicMass(mz);
     }
 
 
@@ -57,34 +61,31 @@ public class Adduct {
      * @return mz
      */
 
-    public static Double getMZFromMonoisotopicMass(Double monoisotopicMass, String adduct) {
-        Double mz;
-
-        int multimer = extractMultimer(adduct);
-        int charge = extractCharge(adduct);
-
-        Double adductMass = AdductList.MAPMZPOSITIVEADDUCTS.get(adduct);
-        if (adductMass == null) {
-            adductMass = AdductList.MAPMZNEGATIVEADDUCTS.get(adduct);
+    public static double getMZFromMonoisotopicMass(double monoisotopicMass, String adduct) {
+        AdductDescriptor descriptor = AdductList.getDescriptor(adduct);
+        if (descriptor == null) {
+            // Adducts out of the lists have no offset, only the charge and the multimer are used
+            descriptor = new AdductDescriptor(-1, adduct, 0.0, extractCharge(adduct), extractMultimer(adduct), null);
         }
+        return descriptor.toMZ(monoisotopicMass);
+    }
 
-        if (adductMass == null) {
-            adductMass = 0.0;
-        }
-        if (charge == 1) {
-            //if Adduct is single charge the formula is M = m/z +- adductMass. Charge is 1 so it does not affect
-            // therefore mz = M + adductMass
-            mz = monoisotopicMass - adductMass;
-        } else if (multimer > 1) {
-            //if adduct is a dimer or multimer the formula is M =  (mz +- adductMass) / numberOfMultimer
-            //therefore mz = (M * numberOfMultimer) + adductMass
-            mz = (monoisotopicMass*multimer) - adductMass ;
-        } else {
-            //if Adduct is double or triple charged the formula is M = ( mz +- adductMass ) * charge
-            //therefore mz = (M / charge) + adductMass
-            mz = (monoisotopicMass/charge) - adductMass;
-        }
-        return mz;
+    /**
+     * Calculate the mz of a monoisotopic mass with the corresponding adduct, without any lookup
+     *
+     * @param monoisotopicMass
+     * @param adduct pre-parsed adduct obtained from {@link AdductList}
+     *
+     * @return mz
+     */
+    public static double getMZFromMonoisotopicMass(double monoisotopicMass, AdductDescriptor adduct) {
+        //if Adduct is single charge the formula is M = m/z +- adductMass. Charge is 1 so it does not affect
+        // therefore mz = M + adductMass
+        //if adduct is a dimer or multimer the formula is M =  (mz +- adductMass) / numberOfMultimer
+        //therefore mz = (M * numberOfMultimer) + adductMass
+        //if Adduct is double or triple charged the formula is M = ( mz +- adductMass ) * charge
+        //therefore mz = (M / charge) + adductMass
+        return adduct.toMZ(monoisotopicMass);
     }
 
 
@@ -97,7 +98,7 @@ public class Adduct {
      * @param experimentalMass    Mass measured by MS
      * @param theoreticalMass Theoretical mass of the compound
      */
-    public static int calculatePPMIncrement(Double experimentalMass, Double theoreticalMass) {
+    public static int calculatePPMIncrement(double experimentalMass, double theoreticalMass) {
         int ppmIncrement;
         ppmIncrement = (int) Math.round(Math.abs((experimentalMass - theoreticalMass) * 1000000
                 / theoreticalMass));
@@ -110,7 +111,7 @@ public class Adduct {
      * @param experimentalMass    Mass measured by MS
      * @param ppm ppm of tolerance
      */
-    public static double calculateDeltaPPM(Double experimentalMass, int ppm) {
+    public static double calculateDeltaPPM(double experimentalMass, int ppm) {
         double deltaPPM;
         deltaPPM =  Math.round(Math.abs((experimentalMass * ppm) / 1000000));
         return deltaPPM;
@@ -118,9 +119,12 @@ public class Adduct {
     }
 
     // metodos extra que hacen falta:
+    // Only used when the adduct lists are parsed (and for adducts out of the lists), the patterns are compiled once.
+    private static final Pattern MULTIMER_PATTERN = Pattern.compile("(\\d+)M");
+    private static final Pattern CHARGE_PATTERN = Pattern.compile("(\\d+)([+-]$)");
+
     public static int extractMultimer(String adduct) {
-        Pattern pMultimer = Pattern.compile("(\\d+)M");
-        Matcher mMultimer = pMultimer.matcher(adduct);
+        Matcher mMultimer = MULTIMER_PATTERN.matcher(adduct);
         if (mMultimer.find()) {
             return Integer.parseInt(mMultimer.group(1));
         }else {
@@ -128,8 +132,7 @@ public class Adduct {
         }
     }
     public static int extractCharge(String adduct) {
-        Pattern pCharge = Pattern.compile("(\\d+)([+-]$)");
-        Matcher mCharge = pCharge.matcher(adduct);
+        Matcher mCharge = CHARGE_PATTERN.matcher(adduct);
         if (mCharge.find()) {
             return Integer.parseInt(mCharge.group(1));
         } else {
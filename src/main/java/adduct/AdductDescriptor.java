@@ -0,0 +1,94 @@
+package adduct;
+
+import lipid.IonizationMode;
+
+/**
+ * Immutable, pre-parsed view of one entry of {@link AdductList}. The offset, charge and multimer are extracted once
+ * when the adduct lists are loaded, so the mass conversions below work on primitives only (no map lookups, no regex).
+ */
+public final class AdductDescriptor {
+
+    private final int id;
+    private final String name;
+    private final double mzOffset;
+    private final int charge;
+    private final int multimer;
+    private final IonizationMode ionizationMode;
+
+    /**
+     * @param id             dense identifier of the adduct, -1 for adducts that are not part of {@link AdductList}
+     * @param name           adduct name ([M+H]+, [2M+H]+, [M+2H]2+, etc..)
+     * @param mzOffset       offset stored in {@link AdductList} for the adduct
+     * @param charge         charge of the adduct (1 if it is not specified in the name)
+     * @param multimer       multimer of the adduct (1 if it is not specified in the name)
+     * @param ionizationMode polarity of the adduct, null if unknown
+     */
+    AdductDescriptor(int id, String name, double mzOffset, int charge, int multimer, IonizationMode ionizationMode) {
+        this.id = id;
+        this.name = name;
+        this.mzOffset = mzOffset;
+        this.charge = charge;
+        this.multimer = multimer;
+        this.ionizationMode = ionizationMode;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getMzOffset() {
+        return mzOffset;
+    }
+
+    public int getCharge() {
+        return charge;
+    }
+
+    public int getMultimer() {
+        return multimer;
+    }
+
+    public IonizationMode getIonizationMode() {
+        return ionizationMode;
+    }
+
+    /**
+     * @param mz experimental mz
+     * @return the monoisotopic mass of mz assuming this adduct. Same arithmetic as
+     * {@link Adduct#getMonoisotopicMassFromMZ(double, String)}
+     */
+    public double toMonoisotopicMass(double mz) {
+        return (mz + mzOffset) * charge / multimer;
+    }
+
+    /**
+     * @param monoisotopicMass neutral mass
+     * @return the mz of the monoisotopic mass with this adduct. Same arithmetic as
+     * {@link Adduct#getMZFromMonoisotopicMass(double, String)}
+     */
+    public double toMZ(double monoisotopicMass) {
+        if (charge == 1) {
+            return monoisotopicMass - mzOffset;
+        } else if (multimer > 1) {
+            return (monoisotopicMass * multimer) - mzOffset;
+        } else {
+            return (monoisotopicMass / charge) - mzOffset;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdductDescriptor{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", mzOffset=" + mzOffset +
+                ", charge=" + charge +
+                ", multimer=" + multimer +
+                ", ionizationMode=" + ionizationMode +
+                '}';
+    }
+}
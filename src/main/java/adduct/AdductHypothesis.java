@@ -0,0 +1,67 @@
+package adduct;
+
+import java.util.Comparator;
+
+/**
+ * One adduct hypothesis of an annotation with the peaks that support it: for every other adduct of the ionization
+ * mode, the closest grouped peak within the tolerance of the mz expected for the same compound. Immutable.
+ */
+public final class AdductHypothesis {
+
+    /**
+     * Best first: more supporting peaks, then lower mean ppm error, then more supporting intensity, then
+     * {@link AdductList} order
+     */
+    public static final Comparator<AdductHypothesis> RANKING = Comparator
+            .comparingInt(AdductHypothesis::getSupportingPeaks).reversed()
+            .thenComparingDouble(AdductHypothesis::getMeanPPMError)
+            .thenComparing(Comparator.comparingDouble(AdductHypothesis::getSupportingIntensity).reversed())
+            .thenComparingInt(hypothesis -> hypothesis.getAdduct().getId());
+
+    private final AdductDescriptor adduct;
+    private final int supportingPeaks;
+    private final double meanPPMError;
+    private final double supportingIntensity;
+
+    AdductHypothesis(AdductDescriptor adduct, int supportingPeaks, double meanPPMError, double supportingIntensity) {
+        this.adduct = adduct;
+        this.supportingPeaks = supportingPeaks;
+        this.meanPPMError = meanPPMError;
+        this.supportingIntensity = supportingIntensity;
+    }
+
+    public AdductDescriptor getAdduct() {
+        return adduct;
+    }
+
+    public String getName() {
+        return adduct.getName();
+    }
+
+    /**
+     * @return number of other adducts of the same compound found among the grouped peaks
+     */
+    public int getSupportingPeaks() {
+        return supportingPeaks;
+    }
+
+    /**
+     * @return mean ppm error of the supporting peaks against their expected mzs
+     */
+    public double getMeanPPMError() {
+        return meanPPMError;
+    }
+
+    /**
+     * @return sum of the intensities of the supporting peaks
+     */
+    public double getSupportingIntensity() {
+        return supportingIntensity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdductHypothesis(%s, supportingPeaks=%d, meanPPMError=%.2f, supportingIntensity=%.1f)",
+                adduct.getName(), supportingPeaks, meanPPMError, supportingIntensity);
+    }
+}
@@ -1,7 +1,11 @@
 package adduct;
 
+import lipid.IonizationMode;
+
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class AdductList {
@@ -9,6 +13,10 @@ public class AdductList {
     public static final Map<String, Double> MAPMZPOSITIVEADDUCTS;
     public static final Map<String, Double> MAPMZNEGATIVEADDUCTS;
 
+    private static final List<AdductDescriptor> POSITIVE_DESCRIPTORS;
+    private static final List<AdductDescriptor> NEGATIVE_DESCRIPTORS;
+    private static final Map<String, AdductDescriptor> DESCRIPTORS_BY_NAME;
+
     static {
         Map<String, Double> mapMZPositiveAdductsTMP = new LinkedHashMap<>();
         mapMZPositiveAdductsTMP.put("[M+H]+", -1.007276d);
@@ -30,6 +38,58 @@ public class AdductList {
         mapMZNegativeAdductsTMP.put("[2M-H]−", 1.007276d);
         mapMZNegativeAdductsTMP.put("[M-2H]2−", 1.007276d);
         MAPMZNEGATIVEADDUCTS = Collections.unmodifiableMap(mapMZNegativeAdductsTMP);
+
+        // Parse every adduct once. Ids are dense: positive adducts first, then negative ones, in map order.
+        Map<String, AdductDescriptor> descriptorsByNameTMP = new HashMap<>();
+        POSITIVE_DESCRIPTORS = compile(MAPMZPOSITIVEADDUCTS, IonizationMode.POSITIVE, 0, descriptorsByNameTMP);
+        NEGATIVE_DESCRIPTORS = compile(MAPMZNEGATIVEADDUCTS, IonizationMode.NEGATIVE, POSITIVE_DESCRIPTORS.size(), descriptorsByNameTMP);
+        DESCRIPTORS_BY_NAME = Collections.unmodifiableMap(descriptorsByNameTMP);
+    }
+
+    private static List<AdductDescriptor> compile(Map<String, Double> adducts, IonizationMode ionizationMode, int firstId,
+                                              Map<String, AdductDescriptor> descriptorsByName) {
+        AdductDescriptor[] descriptors = new AdductDescriptor[adducts.size()];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : adducts.entrySet()) {
+            String adduct = entry.getKey();
+            descriptors[i] = new AdductDescriptor(firstId + i, adduct, entry.getValue(),
+                    Adduct.extractCharge(adduct), Adduct.extractMultimer(adduct), ionizationMode);
+            // Same precedence as the map lookups: positive adducts win over negative ones with the same name
+            descriptorsByName.putIfAbsent(adduct, descriptors[i]);
+            i++;
+        }
+        return List.of(descriptors);
+    }
+
+    /**
+     * @param adduct adduct name ([M+H]+, [2M+H]+, [M+2H]2+, etc..)
+     * @return the pre-parsed adduct or null if the adduct is not in the lists
+     */
+    public static AdductDescriptor getDescriptor(String adduct) {
+        return DESCRIPTORS_BY_NAME.get(adduct);
+    }
+
+    /**
+     * @param id dense id of the adduct, {@link AdductDescriptor#getId()}
+     * @return the pre-parsed adduct
+     */
+    public static AdductDescriptor getDescriptor(int id) {
+        return id < POSITIVE_DESCRIPTORS.size() ? POSITIVE_DESCRIPTORS.get(id) : NEGATIVE_DESCRIPTORS.get(id - POSITIVE_DESCRIPTORS.size());
+    }
+
+    /**
+     * @param ionizationMode POSITIVE or NEGATIVE
+     * @return the immutable list of pre-parsed adducts of the ionization mode, in the same order as the corresponding map
+     */
+    public static List<AdductDescriptor> getDescriptors(IonizationMode ionizationMode) {
+        return ionizationMode == IonizationMode.POSITIVE ? POSITIVE_DESCRIPTORS : NEGATIVE_DESCRIPTORS;
+    }
+
+    /**
+     * @return number of adducts in both lists. Every descriptor id is lower than this number
+     */
+    public static int getDescriptorCount() {
+        return POSITIVE_DESCRIPTORS.size() + NEGATIVE_DESCRIPTORS.size();
     }
 
 }
@@ -0,0 +1,179 @@
+package adduct;
+
+import lipid.DiagnosticTrace;
+import lipid.IonizationMode;
+import lipid.PeakGroup;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches the adduct hypotheses of an annotation mz against its grouped peaks, for the adducts of one ionization mode.
+ * For every hypothesis a, the mz that the same compound shows with every other adduct b is computed and looked for in
+ * the grouped peaks with the binary search of {@link PeakGroup}, so a search costs O(A^2 log P) for A adducts and P
+ * peaks. Nothing is precomputed per pair of adducts.
+ * <p>
+ * The expected mzs are computed on every call with the same two conversions as before (mz -> monoisotopic mass with a,
+ * monoisotopic mass -> mz with b). Folding each pair into a single linear expression would round differently and could
+ * change the result for peaks right at the tolerance.
+ */
+public final class AdductMatcher {
+
+    private static final AdductMatcher POSITIVE = new AdductMatcher(IonizationMode.POSITIVE);
+    private static final AdductMatcher NEGATIVE = new AdductMatcher(IonizationMode.NEGATIVE);
+
+    private final IonizationMode ionizationMode;
+    private final AdductDescriptor[] adducts;
+
+    private AdductMatcher(IonizationMode ionizationMode) {
+        this.ionizationMode = ionizationMode;
+        List<AdductDescriptor> descriptors = AdductList.getDescriptors(ionizationMode);
+        this.adducts = descriptors.toArray(new AdductDescriptor[0]);
+    }
+
+    /**
+     * @param ionizationMode POSITIVE or NEGATIVE
+     * @return the matcher of the adducts of the ionization mode
+     */
+    public static AdductMatcher forMode(IonizationMode ionizationMode) {
+        return ionizationMode == IonizationMode.POSITIVE ? POSITIVE : NEGATIVE;
+    }
+
+    public IonizationMode getIonizationMode() {
+        return ionizationMode;
+    }
+
+    /**
+     * @return number of adducts of the ionization mode
+     */
+    public int size() {
+        return adducts.length;
+    }
+
+    /**
+     * @param index index of the adduct in {@link AdductList} order
+     * @return the adduct
+     */
+    public AdductDescriptor getAdduct(int index) {
+        return adducts[index];
+    }
+
+    /**
+     * @param mz              mz of the annotation
+     * @param annotationAdduct index of the adduct hypothesis of the annotation
+     * @param peakAdduct      index of the adduct of the other peak
+     * @return the mz expected for the compound with the adduct peakAdduct
+     */
+    public double expectedMZ(double mz, int annotationAdduct, int peakAdduct) {
+        return adducts[peakAdduct].toMZ(adducts[annotationAdduct].toMonoisotopicMass(mz));
+    }
+
+    /**
+     * Look for the first adduct (in {@link AdductList} order) of the annotation mz that is supported by any other
+     * grouped peak, that is, a peak that matches the mz expected for any adduct of the same compound.
+     *
+     * @param mz          mz of the annotation
+     * @param peaks       grouped peaks of the annotation
+     * @param mzTolerance absolute tolerance in Da. Peaks within the tolerance of mz are the annotation itself
+     * @return index of the detected adduct or -1 if no adduct is supported
+     */
+    public int findFirstSupportedAdduct(double mz, PeakGroup peaks, double mzTolerance) {
+        boolean trace = DiagnosticTrace.isEnabled();
+        for (int a = 0; a < adducts.length; a++) {
+            double monoisotopicMass = adducts[a].toMonoisotopicMass(mz);
+            for (int b = 0; b < adducts.length; b++) {
+                double expectedMz = adducts[b].toMZ(monoisotopicMass);
+                if (trace) {
+                    DiagnosticTrace.adductHypothesis(mz, adducts[a].getName(), adducts[b].getName(), expectedMz);
+                }
+                if (peaks.containsPeak(expectedMz, mzTolerance, mz)) {
+                    if (trace) {
+                        DiagnosticTrace.adductMatch(mz, adducts[a].getName(), adducts[b].getName());
+                    }
+                    return a;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rank the adduct hypotheses of the annotation mz in one pass over the adduct pairs. A hypothesis a is supported by the
+     * grouped peaks (other than the annotation itself) closest to the mz expected for any other adduct b. Each peak is
+     * counted once, with the ppm error of the adduct it matches best, and the hypotheses are ordered by
+     * {@link AdductHypothesis#RANKING}.
+     * <p>
+     * Only the best k are kept. Every adduct b adds at most one supporting peak, so once there are k hypotheses, one
+     * stops being evaluated as soon as the adducts left cannot give it as many supporting peaks as the k-th best.
+     *
+     * @param mz          mz of the annotation
+     * @param peaks       grouped peaks of the annotation
+     * @param mzTolerance absolute tolerance in Da. Peaks within the tolerance of mz are the annotation itself
+     * @param k           maximum number of hypotheses returned
+     * @return the best k hypotheses with at least one supporting peak, best first
+     */
+    public List<AdductHypothesis> rankAdducts(double mz, PeakGroup peaks, double mzTolerance, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1, got " + k);
+        }
+        boolean trace = DiagnosticTrace.isEnabled();
+        AdductHypothesis[] best = new AdductHypothesis[Math.min(k, adducts.length)];
+        int ranked = 0;
+        // Supporting peaks of the hypothesis being evaluated and their lowest ppm error
+        int[] supportingPositions = new int[adducts.length];
+        double[] supportingPPMErrors = new double[adducts.length];
+        for (int a = 0; a < adducts.length; a++) {
+            // Supporting peaks needed to enter the ranking, 1 until it is full
+            int needed = ranked < best.length ? 1 : best[ranked - 1].getSupportingPeaks();
+            double monoisotopicMass = adducts[a].toMonoisotopicMass(mz);
+            int supportingPeaks = 0;
+            for (int b = 0; b < adducts.length && supportingPeaks + adducts.length - b >= needed; b++) {
+                double expectedMz = adducts[b].toMZ(monoisotopicMass);
+                if (trace) {
+                    DiagnosticTrace.adductHypothesis(mz, adducts[a].getName(), adducts[b].getName(), expectedMz);
+                }
+                int position = peaks.findPeak(expectedMz, mzTolerance, mz);
+                if (position < 0) {
+                    continue;
+                }
+                if (trace) {
+                    DiagnosticTrace.adductMatch(mz, adducts[a].getName(), adducts[b].getName());
+                }
+                double ppmError = Math.abs(peaks.getMz(position) - expectedMz) / expectedMz * 1_000_000d;
+                int peak = 0;
+                while (peak < supportingPeaks && supportingPositions[peak] != position) {
+                    peak++;
+                }
+                if (peak == supportingPeaks) {
+                    supportingPositions[supportingPeaks] = position;
+                    supportingPPMErrors[supportingPeaks++] = ppmError;
+                } else {
+                    supportingPPMErrors[peak] = Math.min(supportingPPMErrors[peak], ppmError);
+                }
+            }
+            if (supportingPeaks < needed) {
+                continue;
+            }
+            double ppmErrors = 0;
+            double intensity = 0;
+            for (int peak = 0; peak < supportingPeaks; peak++) {
+                ppmErrors += supportingPPMErrors[peak];
+                intensity += peaks.getIntensity(supportingPositions[peak]);
+            }
+            AdductHypothesis hypothesis = new AdductHypothesis(adducts[a], supportingPeaks,
+                    ppmErrors / supportingPeaks, intensity);
+            // Insertion into the best k, the hypothesis is dropped if it does not beat the k-th
+            int position = ranked < best.length ? ranked++ : best.length;
+            while (position > 0 && AdductHypothesis.RANKING.compare(hypothesis, best[position - 1]) < 0) {
+                if (position < best.length) {
+                    best[position] = best[position - 1];
+                }
+                position--;
+            }
+            if (position < best.length) {
+                best[position] = hypothesis;
+            }
+        }
+        return Arrays.asList(Arrays.copyOf(best, ranked));
+    }
+}
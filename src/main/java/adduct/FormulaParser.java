@@ -0,0 +1,164 @@
+package adduct;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exact monoisotopic masses of molecular formulas (C57H104O6, C42H82NO8P, C6H12O6(H2O)2, etc..). The masses of the
+ * {@link #MAX_CACHED_FORMULAS} formulas used most recently are cached, the calls for them are a map lookup, so the
+ * isomers of a catalogue share the parse of their formula. When the cache is full the least recently used formula is
+ * evicted. Thread safe.
+ */
+public class FormulaParser {
+
+    // Mass of the most abundant isotope of every element, same values as chemcalc
+    private static final Map<String, Double> ELEMENT_MASSES = Map.ofEntries(
+            Map.entry("H", 1.00782503207),
+            Map.entry("D", 2.0141017778),
+            Map.entry("C", 12.0),
+            Map.entry("N", 14.0030740048),
+            Map.entry("O", 15.99491461956),
+            Map.entry("F", 18.99840322),
+            Map.entry("Na", 22.9897692809),
+            Map.entry("Mg", 23.9850417),
+            Map.entry("Si", 27.9769265325),
+            Map.entry("P", 30.97376163),
+            Map.entry("S", 31.97207100),
+            Map.entry("Cl", 34.96885268),
+            Map.entry("K", 38.96370668),
+            Map.entry("Ca", 39.96259098),
+            Map.entry("Fe", 55.9349375),
+            Map.entry("Br", 78.9183371),
+            Map.entry("I", 126.904473));
+
+    /**
+     * Maximum number of formulas whose mass is cached
+     */
+    public static final int MAX_CACHED_FORMULAS = 10_000;
+
+    // Access ordered, guarded by itself. Lookups are short next to a parse, so one lock is enough
+    private static final Map<String, Double> MASS_CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+            return size() > MAX_CACHED_FORMULAS;
+        }
+    };
+
+    private FormulaParser() {
+    }
+
+    /**
+     * @param formula molecular formula, elements with optional counts and optional parenthesised groups with counts
+     * @return the exact monoisotopic mass
+     * @throws IllegalArgumentException if the formula is empty, malformed or has an element without mass
+     */
+    public static double getMonoisotopicMass(String formula) {
+        Double mass;
+        synchronized (MASS_CACHE) {
+            mass = MASS_CACHE.get(formula);
+        }
+        if (mass == null) {
+            // Parsed outside the lock, and an exception does not leave anything in the cache
+            mass = parse(formula);
+            synchronized (MASS_CACHE) {
+                MASS_CACHE.put(formula, mass);
+            }
+        }
+        return mass;
+    }
+
+    /**
+     * @return number of formulas whose mass is cached
+     */
+    public static int getCachedFormulas() {
+        synchronized (MASS_CACHE) {
+            return MASS_CACHE.size();
+        }
+    }
+
+    static boolean isCached(String formula) {
+        synchronized (MASS_CACHE) {
+            return MASS_CACHE.containsKey(formula);
+        }
+    }
+
+    private static double parse(String formula) {
+        Cursor cursor = new Cursor(formula);
+        double mass = parseGroup(cursor);
+        if (cursor.position < formula.length()) {
+            throw malformed(formula, cursor.position);
+        }
+        return mass;
+    }
+
+    /**
+     * Parse elements and groups until the end of the formula or a closing parenthesis
+     *
+     * @throws IllegalArgumentException if there is no element or group, an empty formula or () has no mass
+     */
+    private static double parseGroup(Cursor cursor) {
+        String formula = cursor.formula;
+        int groupStart = cursor.position;
+        double mass = 0;
+        while (cursor.position < formula.length()) {
+            char c = formula.charAt(cursor.position);
+            if (c == ')') {
+                break;
+            }
+            double unitMass;
+            if (c == '(') {
+                int open = cursor.position++;
+                unitMass = parseGroup(cursor);
+                if (cursor.position == formula.length()) {
+                    throw malformed(formula, open);
+                }
+                cursor.position++; // ')'
+            } else if (c >= 'A' && c <= 'Z') {
+                int start = cursor.position++;
+                if (cursor.position < formula.length() && Character.isLowerCase(formula.charAt(cursor.position))) {
+                    cursor.position++;
+                }
+                Double elementMass = ELEMENT_MASSES.get(formula.substring(start, cursor.position));
+                if (elementMass == null) {
+                    throw new IllegalArgumentException("Unknown element " + formula.substring(start, cursor.position)
+                            + " in the formula " + formula);
+                }
+                unitMass = elementMass;
+            } else {
+                throw malformed(formula, cursor.position);
+            }
+            mass += unitMass * parseCount(cursor);
+        }
+        if (cursor.position == groupStart) {
+            throw malformed(formula, groupStart);
+        }
+        return mass;
+    }
+
+    /**
+     * @return the count after an element or group, 1 if there is none
+     */
+    private static int parseCount(Cursor cursor) {
+        String formula = cursor.formula;
+        int count = 0;
+        int start = cursor.position;
+        while (cursor.position < formula.length() && formula.charAt(cursor.position) >= '0'
+                && formula.charAt(cursor.position) <= '9') {
+            count = count * 10 + (formula.charAt(cursor.position++) - '0');
+        }
+        return cursor.position == start ? 1 : count;
+    }
+
+    private static IllegalArgumentException malformed(String formula, int position) {
+        return new IllegalArgumentException("Malformed formula " + formula + " at position " + position);
+    }
+
+    private static final class Cursor {
+        private final String formula;
+        private int position;
+
+        Cursor(String formula) {
+            this.formula = formula;
+        }
+    }
+}
@@ -1,6 +1,115 @@
 package adduct;
 
+import lipid.IonizationMode;
+import lipid.PipelineEvents;
+
+import java.util.List;
+
+/**
+ * Bulk transformations between mzs and monoisotopic masses. The results are written into arrays supplied by the
+ * caller, so converting a whole feature table does not allocate per element. The values are exactly the same as
+ * {@link AdductDescriptor#toMonoisotopicMass(double)} and {@link AdductDescriptor#toMZ(double)}.
+ * <p>
+ * The loops are kept as simple counted loops over arrays with loop invariant operands, so the JIT vectorizes them
+ * (SuperWord). The Vector API is not used because the kjar build compiles the sources without the incubator module.
+ */
 public class MassTransformation {
 
-// !! TODO create functions to transform the mass of the mzs to monoisotopic masses and vice versa.
+    private MassTransformation() {
+    }
+
+    /**
+     * Transform the mzs to monoisotopic masses assuming one adduct
+     *
+     * @param mzs                experimental mzs
+     * @param adduct             adduct hypothesis
+     * @param monoisotopicMasses output, at least as long as mzs
+     */
+    public static void toMonoisotopicMasses(double[] mzs, AdductDescriptor adduct, double[] monoisotopicMasses) {
+        PipelineEvents.MassConversion event = new PipelineEvents.MassConversion();
+        event.begin();
+        checkLength(mzs, monoisotopicMasses);
+        transformToMonoisotopicMasses(mzs, adduct, monoisotopicMasses);
+        commit(event, mzs.length, 1, true);
+    }
+
+    private static void transformToMonoisotopicMasses(double[] mzs, AdductDescriptor adduct, double[] monoisotopicMasses) {
+        double offset = adduct.getMzOffset();
+        // int to double is exact, so the products and quotients are the same as with the int operands
+        double charge = adduct.getCharge();
+        double multimer = adduct.getMultimer();
+        for (int i = 0; i < mzs.length; i++) {
+            monoisotopicMasses[i] = (mzs[i] + offset) * charge / multimer;
+        }
+    }
+
+    /**
+     * Transform the mzs to monoisotopic masses for every adduct of the ionization mode
+     *
+     * @param mzs                experimental mzs
+     * @param ionizationMode     POSITIVE or NEGATIVE
+     * @param monoisotopicMasses output, one row per adduct in the order of {@link AdductList#getDescriptors(IonizationMode)}.
+     *                           Every row at least as long as mzs
+     */
+    public static void toMonoisotopicMasses(double[] mzs, IonizationMode ionizationMode, double[][] monoisotopicMasses) {
+        List<AdductDescriptor> adducts = AdductList.getDescriptors(ionizationMode);
+        if (monoisotopicMasses.length < adducts.size()) {
+            throw new IllegalArgumentException("Expected " + adducts.size() + " output rows for " + ionizationMode
+                    + " but got " + monoisotopicMasses.length);
+        }
+        PipelineEvents.MassConversion event = new PipelineEvents.MassConversion();
+        event.begin();
+        for (int a = 0; a < adducts.size(); a++) {
+            checkLength(mzs, monoisotopicMasses[a]);
+            transformToMonoisotopicMasses(mzs, adducts.get(a), monoisotopicMasses[a]);
+        }
+        commit(event, mzs.length, adducts.size(), true);
+    }
+
+    /**
+     * Transform the monoisotopic masses to the mzs of one adduct
+     *
+     * @param monoisotopicMasses neutral masses
+     * @param adduct             adduct
+     * @param mzs                output, at least as long as monoisotopicMasses
+     */
+    public static void toMZs(double[] monoisotopicMasses, AdductDescriptor adduct, double[] mzs) {
+        PipelineEvents.MassConversion event = new PipelineEvents.MassConversion();
+        event.begin();
+        checkLength(monoisotopicMasses, mzs);
+        double offset = adduct.getMzOffset();
+        double charge = adduct.getCharge();
+        double multimer = adduct.getMultimer();
+        // Same branches as AdductDescriptor.toMZ, resolved once for the whole array
+        if (adduct.getCharge() == 1) {
+            for (int i = 0; i < monoisotopicMasses.length; i++) {
+                mzs[i] = monoisotopicMasses[i] - offset;
+            }
+        } else if (adduct.getMultimer() > 1) {
+            for (int i = 0; i < monoisotopicMasses.length; i++) {
+                mzs[i] = (monoisotopicMasses[i] * multimer) - offset;
+            }
+        } else {
+            for (int i = 0; i < monoisotopicMasses.length; i++) {
+                mzs[i] = (monoisotopicMasses[i] / charge) - offset;
+            }
+        }
+        commit(event, monoisotopicMasses.length, 1, false);
+    }
+
+    private static void commit(PipelineEvents.MassConversion event, int values, int adducts, boolean toMonoisotopicMass) {
+        if (event.shouldCommit()) {
+            event.values = values;
+            event.adducts = adducts;
+            event.toMonoisotopicMass = toMonoisotopicMass;
+            event.commit();
+        }
+    }
+
+    private static void checkLength(double[] input, double[] output) {
+        if (output.length < input.length) {
+            throw new IllegalArgumentException("Output array of length " + output.length
+                    + " cannot hold " + input.length + " values");
+        }
+    }
 }
@@ -0,0 +1,397 @@
+package io;
+
+import lipid.Annotation;
+import lipid.Lipid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Streaming writer of scored annotations: lipid, adduct, mz, RT, intensity, score and normalized score. Rows are
+ * encoded straight into a byte buffer (numbers are formatted digit by digit, without Strings) and the buffer is written
+ * to the file when it is full, so the writer keeps up with the scoring.
+ * <p>
+ * Thread safe: the scoring threads can write their annotations while other samples are still being scored. Every
+ * call writes whole rows, rows of different calls are not mixed.
+ */
+public class AnnotationWriter implements AutoCloseable {
+
+    public enum Format {
+        CSV,
+        TSV,
+        /**
+         * Metadata (MTD) and small molecule (SML) sections of mzTab-M 2.0: one assay and study variable for the
+         * sample, the intensity as its abundance, the normalized score as the confidence value (declared as
+         * id_confidence_measure[1]) and the mz, RT and score as opt_global columns
+         */
+        MZTAB_M
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final int MZ_DECIMALS = 4;
+    private static final int RT_DECIMALS = 3;
+    private static final int INTENSITY_DECIMALS = 1;
+    private static final int SCORE_DECIMALS = 4;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    // Beyond this the scaled value does not fit in a long, those numbers are written with Double.toString
+    private static final double MAX_FIXED_POINT = 1e12;
+
+    private static final String MZTAB_NULL = "null";
+    private static final String ID_CONFIDENCE_MEASURE = "[, , normalized elution order score, ]";
+
+    private final FileChannel channel;
+    private final Format format;
+    private final URI msRunLocation;
+    private final byte delimiter;
+    private ByteBuffer buffer;
+    private long writtenAnnotations;
+
+    private AnnotationWriter(FileChannel channel, Format format, URI msRunLocation, int bufferSize) {
+        this.channel = channel;
+        this.format = format;
+        this.msRunLocation = msRunLocation;
+        this.delimiter = format == Format.CSV ? (byte) ',' : (byte) '\t';
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Create (or replace) the file and write the header
+     *
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public static AnnotationWriter open(Path file, Format format) {
+        return open(file, format, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize bytes buffered before every write to the file
+     */
+    public static AnnotationWriter open(Path file, Format format, int bufferSize) {
+        return open(file, format, null, bufferSize);
+    }
+
+    /**
+     * @param msRunLocation location of the MS run of the annotated sample, written as ms_run[1]-location in mzTab-M.
+     *                      null if it is not known
+     * @param bufferSize    bytes buffered before every write to the file
+     */
+    public static AnnotationWriter open(Path file, Format format, URI msRunLocation, int bufferSize) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            AnnotationWriter writer = new AnnotationWriter(channel, format, msRunLocation, Math.max(bufferSize, 256));
+            writer.writeHeader();
+            return writer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the annotations to " + file, e);
+        }
+    }
+
+    private void writeHeader() {
+        if (format == Format.MZTAB_M) {
+            writeLine("MTD\tmzTab-version\t2.0.0-M");
+            writeLine("MTD\tmzTab-ID\tlipid-annotations");
+            writeLine("MTD\tsoftware[1]\t[MS, MS:1000799, custom unreleased software tool, lipid annotator]");
+            writeLine("MTD\tquantification_method\t[MS, MS:1001834, LC-MS label-free quantitation analysis, ]");
+            writeLine("MTD\tms_run[1]-location\t" + (msRunLocation == null ? MZTAB_NULL : msRunLocation.toString()));
+            writeLine("MTD\tassay[1]\tsample");
+            writeLine("MTD\tassay[1]-ms_run_ref\tms_run[1]");
+            writeLine("MTD\tstudy_variable[1]\tsample");
+            writeLine("MTD\tstudy_variable[1]-assay_refs\tassay[1]");
+            writeLine("MTD\tstudy_variable[1]-description\tAnnotated sample");
+            writeLine("MTD\tcv[1]-label\tMS");
+            writeLine("MTD\tcv[1]-full_name\tPSI-MS controlled vocabulary");
+            writeLine("MTD\tcv[1]-version\t4.1.11");
+            writeLine("MTD\tcv[1]-uri\thttps://raw.githubusercontent.com/HUPO-PSI/psi-ms-CV/master/psi-ms.obo");
+            writeLine("MTD\tcv[2]-label\tPRIDE");
+            writeLine("MTD\tcv[2]-full_name\tPRIDE PRoteomics IDEntifications (PRIDE) database controlled vocabulary");
+            writeLine("MTD\tcv[2]-version\t16:10:2008 11:38");
+            writeLine("MTD\tcv[2]-uri\thttps://www.ebi.ac.uk/ols/ontologies/pride");
+            writeLine("MTD\tdatabase[1]\t[, , lipid catalogue, ]");
+            writeLine("MTD\tdatabase[1]-prefix\tlipid");
+            writeLine("MTD\tdatabase[1]-version\tUnknown");
+            writeLine("MTD\tdatabase[1]-uri\t" + MZTAB_NULL);
+            writeLine("MTD\tsmall_molecule-quantification_unit\t[PRIDE, PRIDE:0000330, Arbitrary quantification unit, ]");
+            writeLine("MTD\tsmall_molecule_feature-quantification_unit\t[PRIDE, PRIDE:0000330, Arbitrary quantification unit, ]");
+            writeLine("MTD\tsmall_molecule-identification_reliability\t[MS, MS:1002896, compound identification confidence level, ]");
+            writeLine("MTD\tid_confidence_measure[1]\t" + ID_CONFIDENCE_MEASURE);
+            writeLine("");
+            writeLine("SMH\tSML_ID\tSMF_ID_REFS\tdatabase_identifier\tchemical_formula\tsmiles\tinchi\tchemical_name"
+                    + "\turi\ttheoretical_neutral_mass\tadduct_ions\treliability\tbest_id_confidence_measure"
+                    + "\tbest_id_confidence_value\tabundance_assay[1]\tabundance_study_variable[1]"
+                    + "\tabundance_variation_study_variable[1]\topt_global_exp_mass_to_charge"
+                    + "\topt_global_retention_time_in_minutes\topt_global_score");
+        } else {
+            char separator = (char) delimiter;
+            writeLine("lipid" + separator + "adduct" + separator + "mz" + separator + "rt" + separator + "intensity"
+                    + separator + "score" + separator + "normalized_score");
+        }
+    }
+
+    private void writeLine(String line) {
+        writeText(line);
+        putByte((byte) '\n');
+    }
+
+    public synchronized void write(Annotation annotation) {
+        writeRow(annotation);
+    }
+
+    /**
+     * Write the annotations as consecutive rows
+     */
+    public synchronized void write(Collection<Annotation> annotations) {
+        for (Annotation annotation : annotations) {
+            writeRow(annotation);
+        }
+    }
+
+    /**
+     * @return number of annotations written so far
+     */
+    public synchronized long getWrittenAnnotations() {
+        return writtenAnnotations;
+    }
+
+    private void writeRow(Annotation annotation) {
+        Lipid lipid = annotation.getLipid();
+        double normalizedScore = annotation.getTotalScoresApplied() == 0 ? Double.NaN : annotation.getNormalizedScore();
+        writtenAnnotations++;
+        if (format == Format.MZTAB_M) {
+            writeMzTabRow(annotation, lipid, normalizedScore);
+            return;
+        }
+        writeField(lipid.getName());
+        writeField(annotation.getAdduct());
+        writeDouble(annotation.getMz(), MZ_DECIMALS);
+        putByte(delimiter);
+        writeDouble(annotation.getRtMin(), RT_DECIMALS);
+        putByte(delimiter);
+        writeDouble(annotation.getIntensity(), INTENSITY_DECIMALS);
+        putByte(delimiter);
+        writeLong(annotation.getScore());
+        putByte(delimiter);
+        writeDouble(normalizedScore, SCORE_DECIMALS);
+        putByte((byte) '\n');
+    }
+
+    private void writeMzTabRow(Annotation annotation, Lipid lipid, double normalizedScore) {
+        writeText("SML\t");
+        writeLong(writtenAnnotations);
+        // No feature (SMF) section, so there are no feature references
+        writeText("\tnull\tlipid:");
+        writeLong(lipid.getCompoundId());
+        putByte(delimiter);
+        writeField(lipid.getFormula());
+        writeText("null\tnull\t");
+        writeField(lipid.getName());
+        writeText("null\t");
+        writeDouble(lipid.getMonoisotopicMass(), MZ_DECIMALS);
+        putByte(delimiter);
+        writeField(mzTabAdduct(annotation.getAdduct()));
+        // Putative annotation (level 2), without spectra the identification cannot be more reliable
+        writeText("2\t");
+        writeField(Double.isNaN(normalizedScore) ? null : ID_CONFIDENCE_MEASURE);
+        writeDouble(normalizedScore, SCORE_DECIMALS);
+        putByte(delimiter);
+        // One assay in the only study variable, so its abundance is the intensity and there is no variation
+        writeDouble(annotation.getIntensity(), INTENSITY_DECIMALS);
+        putByte(delimiter);
+        writeDouble(annotation.getIntensity(), INTENSITY_DECIMALS);
+        writeText("\tnull\t");
+        writeDouble(annotation.getMz(), MZ_DECIMALS);
+        putByte(delimiter);
+        writeDouble(annotation.getRtMin(), RT_DECIMALS);
+        putByte(delimiter);
+        writeLong(annotation.getScore());
+        putByte((byte) '\n');
+    }
+
+    /**
+     * @return the adduct as mzTab-M writes it ([M+H]1+, ASCII signs), null if it is not known
+     */
+    static String mzTabAdduct(String adduct) {
+        if (adduct == null || adduct.equals(Annotation.UNKNOWN_ADDUCT)) {
+            return null;
+        }
+        String ascii = adduct.replace('\u2212', '-');
+        int bracket = ascii.lastIndexOf(']');
+        if (bracket >= 0 && bracket == ascii.length() - 2) {
+            // Only the sign after the bracket, the charge is written explicitly
+            return ascii.substring(0, bracket + 1) + '1' + ascii.charAt(bracket + 1);
+        }
+        return ascii;
+    }
+
+    /**
+     * Write the text and the delimiter. Missing values are null in mzTab-M and empty in CSV/TSV
+     */
+    private void writeField(String text) {
+        if (text == null) {
+            if (format == Format.MZTAB_M) {
+                writeText("null");
+            }
+        } else if (format == Format.CSV && needsQuotes(text)) {
+            putByte((byte) '"');
+            writeText(text.replace("\"", "\"\""));
+            putByte((byte) '"');
+        } else if (format != Format.CSV && text.indexOf('\t') >= 0) {
+            writeText(text.replace('\t', ' '));
+        } else {
+            writeText(text);
+        }
+        putByte(delimiter);
+    }
+
+    private static boolean needsQuotes(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeText(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Not ASCII, the rest of the text is encoded as UTF-8
+                byte[] encoded = text.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(encoded.length);
+                buffer.put(encoded);
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                writeText(Long.toString(value));
+                return;
+            }
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        putDigits(value, 0);
+    }
+
+    /**
+     * Write the value rounded to the decimals (half up), without trailing zeros. NaN is a missing value
+     */
+    private void writeDouble(double value, int decimals) {
+        if (Double.isNaN(value)) {
+            if (format == Format.MZTAB_M) {
+                writeText("null");
+            }
+            return;
+        }
+        if (Double.isInfinite(value) || Math.abs(value) >= MAX_FIXED_POINT) {
+            writeText(Double.toString(value));
+            return;
+        }
+        long scaled = Math.round(Math.abs(value) * POWERS_OF_TEN[decimals]);
+        if (scaled == 0) {
+            putByte((byte) '0');
+            return;
+        }
+        ensureCapacity(24);
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        int fractionDigits = decimals;
+        while (fractionDigits > 0 && scaled % 10 == 0) {
+            scaled /= 10;
+            fractionDigits--;
+        }
+        putDigits(scaled, fractionDigits);
+    }
+
+    /**
+     * Put the digits of a non negative value, with a decimal point before the last fractionDigits digits
+     */
+    private void putDigits(long value, int fractionDigits) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        if (digits <= fractionDigits) {
+            digits = fractionDigits + 1; // leading 0 before the decimal point
+        }
+        int length = digits + (fractionDigits > 0 ? 1 : 0);
+        int end = buffer.position() + length;
+        byte[] bytes = buffer.array();
+        int position = end;
+        for (int digit = 0; digit < digits; digit++) {
+            if (digit == fractionDigits && fractionDigits > 0) {
+                bytes[--position] = '.';
+            }
+            bytes[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    private void putByte(byte b) {
+        ensureCapacity(1);
+        buffer.put(b);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        writeBuffer();
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(bytes);
+        }
+    }
+
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the annotations", e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write the buffered rows to the file
+     */
+    public synchronized void flush() {
+        writeBuffer();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            writeBuffer();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package io;
+
+import lipid.Feature;
+import lipid.IonizationMode;
+import lipid.PeakPool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader of feature tables. The file is read in chunks through a {@link FileChannel} and the numbers are
+ * parsed straight from the bytes of the chunk, so there is no String per line or per field and the memory does not
+ * grow with the file. The features are handed out in bounded batches.
+ * <p>
+ * Two formats are detected from the first line:
+ * <ul>
+ *     <li>CSV or TSV (tab if the header has a tab) with a header row. Columns mz, rt (minutes), intensity and
+ *     polarity (POSITIVE/NEGATIVE or +/-) are required, grouped_peaks is optional with the format
+ *     mz:intensity;mz:intensity. Fields are not quoted.</li>
+ *     <li>mzTab-M: the rows of the small molecule feature section (SMF) with exp_mass_to_charge,
+ *     retention_time_in_seconds, charge (its sign is the polarity) and the first abundance_assay column. Other sections
+ *     are skipped.</li>
+ * </ul>
+ * Missing values (empty or null) are NaN. Not thread safe.
+ */
+public class FeatureReader implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+            1e19, 1e20, 1e21, 1e22};
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private byte[] bytes;
+    private boolean endOfFile;
+    private long lineNumber;
+
+    // Bounds of the current line and of its fields in bytes
+    private int lineStart;
+    private int lineEnd;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+
+    private boolean mzTab;
+    private byte delimiter;
+    private int mzColumn = -1;
+    private int rtColumn = -1;
+    private int intensityColumn = -1;
+    private int polarityColumn = -1;
+    private int peaksColumn = -1;
+
+    // Reused for the grouped peaks of every row
+    private double[] peakMzs = new double[16];
+    private double[] peakIntensities = new double[16];
+
+    private FeatureReader(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.bytes = buffer.array();
+        this.buffer.flip();
+    }
+
+    /**
+     * @param file CSV, TSV or mzTab-M file
+     * @throws UncheckedIOException     if the file cannot be read
+     * @throws IllegalArgumentException if a required column is missing
+     */
+    public static FeatureReader open(Path file) {
+        return open(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize size of the chunks read from the file. Longer lines make the buffer grow
+     */
+    public static FeatureReader open(Path file, int bufferSize) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            FeatureReader reader = new FeatureReader(channel, Math.max(bufferSize, 64));
+            reader.readHeader();
+            return reader;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Cannot read the features of " + file, e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // The original exception is more relevant
+            }
+        }
+    }
+
+    /**
+     * @param maxFeatures maximum size of the batch
+     * @return the next features of the file, an empty list at the end of the file
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public List<Feature> nextBatch(int maxFeatures) {
+        List<Feature> batch = new ArrayList<>(Math.min(maxFeatures, 4096));
+        try {
+            while (batch.size() < maxFeatures && nextLine()) {
+                if (isBlankLine() || (mzTab && !startsWith("SMF"))) {
+                    continue;
+                }
+                splitFields();
+                batch.add(parseFeature());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return batch;
+    }
+
+    /**
+     * Read the whole file handing every batch to the consumer, e.g. the annotation and scoring of the batch
+     *
+     * @return number of features read
+     */
+    public long forEachBatch(int batchSize, Consumer<List<Feature>> consumer) {
+        long features = 0;
+        List<Feature> batch;
+        while (!(batch = nextBatch(batchSize)).isEmpty()) {
+            features += batch.size();
+            consumer.accept(batch);
+        }
+        return features;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readHeader() throws IOException {
+        while (nextLine()) {
+            if (isBlankLine()) {
+                continue;
+            }
+            if (!mzTab && (startsWith("MTD") || startsWith("COM"))) {
+                mzTab = true;
+                delimiter = '\t';
+            }
+            if (mzTab) {
+                // The header of the small molecule feature section, the other sections are skipped
+                if (!startsWith("SFH")) {
+                    continue;
+                }
+            } else {
+                delimiter = hasByte((byte) '\t') ? (byte) '\t' : (byte) ',';
+            }
+            splitFields();
+            readColumns();
+            return;
+        }
+        throw new IllegalArgumentException("No header in the feature file");
+    }
+
+    private void readColumns() {
+        for (int field = 0; field < fieldCount; field++) {
+            String name = new String(bytes, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8)
+                    .trim().toLowerCase(Locale.ROOT);
+            if (mzTab) {
+                if (name.equals("exp_mass_to_charge")) {
+                    mzColumn = field;
+                } else if (name.equals("retention_time_in_seconds")) {
+                    rtColumn = field;
+                } else if (name.equals("charge")) {
+                    polarityColumn = field;
+                } else if (intensityColumn < 0 && name.startsWith("abundance_assay")) {
+                    intensityColumn = field;
+                }
+            } else if (name.equals("mz") || name.equals("m/z")) {
+                mzColumn = field;
+            } else if (name.equals("rt") || name.equals("rtmin") || name.equals("rt_min") || name.equals("retention_time")) {
+                rtColumn = field;
+            } else if (name.equals("intensity") || name.equals("abundance")) {
+                intensityColumn = field;
+            } else if (name.equals("polarity") || name.equals("ionization_mode") || name.equals("mode")) {
+                polarityColumn = field;
+            } else if (name.equals("grouped_peaks") || name.equals("peaks")) {
+                peaksColumn = field;
+            }
+        }
+        if (mzColumn < 0 || rtColumn < 0 || intensityColumn < 0 || polarityColumn < 0) {
+            throw new IllegalArgumentException("The feature file must have mz, rt, intensity and polarity columns"
+                    + (mzTab ? " (exp_mass_to_charge, retention_time_in_seconds, abundance_assay and charge)" : ""));
+        }
+    }
+
+    private Feature parseFeature() {
+        double mz = parseDouble(mzColumn);
+        double rt = parseDouble(rtColumn);
+        double intensity = parseDouble(intensityColumn);
+        IonizationMode ionizationMode = parsePolarity(polarityColumn);
+        if (mzTab) {
+            return new Feature(mz, rt / 60, intensity, ionizationMode);
+        }
+        if (peaksColumn < 0 || peaksColumn >= fieldCount || fieldStarts[peaksColumn] == fieldEnds[peaksColumn]) {
+            return new Feature(mz, rt, intensity, ionizationMode);
+        }
+        int peaks = parsePeaks(fieldStarts[peaksColumn], fieldEnds[peaksColumn]);
+        return new Feature(mz, rt, intensity, ionizationMode,
+                PeakPool.of(Arrays.copyOf(peakMzs, peaks), Arrays.copyOf(peakIntensities, peaks)).all());
+    }
+
+    /**
+     * Parse mz:intensity;mz:intensity into peakMzs and peakIntensities
+     *
+     * @return number of peaks
+     */
+    private int parsePeaks(int start, int end) {
+        int peaks = 0;
+        int position = start;
+        while (position < end) {
+            int separator = indexOf((byte) ':', position, end);
+            int peakEnd = indexOf((byte) ';', position, end);
+            if (separator < 0 || (peakEnd >= 0 && separator > peakEnd)) {
+                throw parseError("Peaks must be mz:intensity pairs separated by ;");
+            }
+            if (peakEnd < 0) {
+                peakEnd = end;
+            }
+            if (peaks == peakMzs.length) {
+                peakMzs = Arrays.copyOf(peakMzs, peaks * 2);
+                peakIntensities = Arrays.copyOf(peakIntensities, peaks * 2);
+            }
+            peakMzs[peaks] = parseDouble(position, separator);
+            peakIntensities[peaks] = parseDouble(separator + 1, peakEnd);
+            peaks++;
+            position = peakEnd + 1;
+        }
+        return peaks;
+    }
+
+    private IonizationMode parsePolarity(int column) {
+        // The field positions of a longer previous row are still in the arrays
+        if (column >= fieldCount) {
+            throw parseError("Missing polarity column");
+        }
+        int start = trimStart(column);
+        int end = trimEnd(column);
+        if (start < end) {
+            byte first = bytes[start];
+            if (mzTab) {
+                // Charge: its sign is the polarity
+                if (first == '-') {
+                    return IonizationMode.NEGATIVE;
+                }
+                if (first == '+' || (first >= '1' && first <= '9')) {
+                    return IonizationMode.POSITIVE;
+                }
+            } else if (first == '+' || first == 'P' || first == 'p') {
+                return IonizationMode.POSITIVE;
+            } else if (first == '-' || first == 'N' || first == 'n') {
+                return IonizationMode.NEGATIVE;
+            }
+        }
+        throw parseError("Unknown polarity");
+    }
+
+    private double parseDouble(int column) {
+        if (column >= fieldCount) {
+            return Double.NaN;
+        }
+        return parseDouble(trimStart(column), trimEnd(column));
+    }
+
+    /**
+     * Parse a decimal number of bytes[start, end). Numbers with at most 15 significant digits and small exponents
+     * are exact with one multiplication or division (both operands are exact doubles), the rest fall back to
+     * {@link Double#parseDouble(String)}
+     */
+    private double parseDouble(int start, int end) {
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+        if (start == end || isNull(start, end)) {
+            return Double.NaN;
+        }
+        int position = start;
+        boolean negative = false;
+        if (bytes[position] == '-' || bytes[position] == '+') {
+            negative = bytes[position] == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; position < end; position++) {
+            byte b = bytes[position];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    // Leading zeros are not significant
+                    if (fraction) {
+                        exponent--;
+                    }
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else {
+                    digits++;
+                    if (!fraction) {
+                        exponent++;
+                    }
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (position < end && (bytes[position] == 'e' || bytes[position] == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+                negativeExponent = bytes[position] == '-';
+                position++;
+            }
+            int explicitExponent = 0;
+            int exponentStart = position;
+            for (; position < end && bytes[position] >= '0' && bytes[position] <= '9'; position++) {
+                explicitExponent = Math.min(explicitExponent * 10 + (bytes[position] - '0'), 100_000);
+            }
+            if (position == exponentStart) {
+                throw parseError("Malformed number");
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (!anyDigit || position != end) {
+            return fallbackParse(start, end);
+        }
+        if (mantissa == 0) {
+            return negative ? -0d : 0d;
+        }
+        if (digits > 15 || exponent < -22 || exponent > 22) {
+            return fallbackParse(start, end);
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private double fallbackParse(int start, int end) {
+        try {
+            return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw parseError("Malformed number");
+        }
+    }
+
+    private boolean isNull(int start, int end) {
+        return end - start == 4 && (bytes[start] == 'n' || bytes[start] == 'N') && (bytes[start + 1] | 0x20) == 'u'
+                && (bytes[start + 2] | 0x20) == 'l' && (bytes[start + 3] | 0x20) == 'l';
+    }
+
+    private int trimStart(int column) {
+        int start = fieldStarts[column];
+        while (start < fieldEnds[column] && bytes[start] == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int column) {
+        int end = fieldEnds[column];
+        while (end > fieldStarts[column] && bytes[end - 1] == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private IllegalArgumentException parseError(String message) {
+        return new IllegalArgumentException(message + " at line " + lineNumber);
+    }
+
+    private void splitFields() {
+        fieldCount = 0;
+        int start = lineStart;
+        for (int position = lineStart; position <= lineEnd; position++) {
+            if (position == lineEnd || bytes[position] == delimiter) {
+                if (fieldCount == fieldStarts.length) {
+                    fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                    fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+                }
+                fieldStarts[fieldCount] = start;
+                fieldEnds[fieldCount] = position;
+                fieldCount++;
+                start = position + 1;
+            }
+        }
+    }
+
+    private boolean isBlankLine() {
+        for (int position = lineStart; position < lineEnd; position++) {
+            if (bytes[position] != ' ' && bytes[position] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(String prefix) {
+        if (lineEnd - lineStart < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[lineStart + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasByte(byte b) {
+        return indexOf(b, lineStart, lineEnd) >= 0;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int position = from; position < to; position++) {
+            if (bytes[position] == b) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move to the next line of the file, reading more of it if needed
+     *
+     * @return false at the end of the file
+     */
+    private boolean nextLine() throws IOException {
+        while (true) {
+            int newline = indexOf((byte) '\n', buffer.position(), buffer.limit());
+            if (newline >= 0 || (endOfFile && buffer.hasRemaining())) {
+                int end = newline >= 0 ? newline : buffer.limit();
+                lineStart = buffer.position();
+                lineEnd = end > lineStart && bytes[end - 1] == '\r' ? end - 1 : end;
+                if (lineNumber == 0 && lineEnd - lineStart >= 3 && (bytes[lineStart] & 0xFF) == 0xEF
+                        && (bytes[lineStart + 1] & 0xFF) == 0xBB && (bytes[lineStart + 2] & 0xFF) == 0xBF) {
+                    // UTF-8 byte order mark
+                    lineStart += 3;
+                }
+                buffer.position(newline >= 0 ? newline + 1 : end);
+                lineNumber++;
+                return true;
+            }
+            if (endOfFile) {
+                return false;
+            }
+            fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // A line longer than the buffer
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+            bytes = buffer.array();
+        }
+        if (channel.read(buffer) < 0) {
+            endOfFile = true;
+        }
+        buffer.flip();
+    }
+}
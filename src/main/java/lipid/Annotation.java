@@ -3,15 +3,23 @@
 package lipid;
 
 import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductHypothesis;
 import adduct.AdductList;
+import adduct.AdductMatcher;
 import lipid.Lipid;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Class to represent the annotation over a lipid
  */
 public class Annotation {
 
+    /**
+     * Adduct of the annotations whose adduct cannot be detected from the grouped peaks
+     */
+    public static final String UNKNOWN_ADDUCT = "Unknown";
 
 
     private final Lipid lipid;
@@ -20,9 +28,12 @@ public class Annotation {
     private final double rtMin;
     private final IonizationMode ionizationMode;
     private String adduct; // !!TODO The adduct will be detected based on the groupedSignals
-    private final Set<Peak> groupedSignals;
-    private int score;
-    private int totalScoresApplied;
+    private final PeakGroup groupedSignals; // sorted by mz, a view of the peak pool of the sample
+    // Score in the high 32 bits and number of scores applied in the low 32 bits, so both change in one atomic add
+    private volatile long scoreState;
+
+    private static final AtomicLongFieldUpdater<Annotation> SCORE_STATE =
+            AtomicLongFieldUpdater.newUpdater(Annotation.class, "scoreState");
 
 
     /**
@@ -33,7 +44,7 @@ public class Annotation {
      * @param ionizationMode
      */
     public Annotation(Lipid lipid, double mz, double intensity, double retentionTime, IonizationMode ionizationMode) {
-        this(lipid, mz, intensity, retentionTime, ionizationMode, Collections.emptySet());
+        this(lipid, mz, intensity, retentionTime, ionizationMode, PeakPool.EMPTY.all());
     }
 
     /**
@@ -45,24 +56,55 @@ public class Annotation {
      * @param groupedSignals
      */
     public Annotation(Lipid lipid, double mz, double intensity, double retentionTime, IonizationMode ionizationMode, Set<Peak> groupedSignals) {
+        // The peaks are copied once into their own PeakPool, sorted by mz and without duplicated mzs (as in a TreeSet)
+        this(lipid, mz, intensity, retentionTime, ionizationMode, PeakPool.of(groupedSignals).all());
+    }
+
+    /**
+     * @param lipid
+     * @param mz
+     * @param intensity
+     * @param retentionTime
+     * @param ionizationMode
+     * @param groupedSignals peaks of the sample peak pool. The candidate lipids of a feature can share the same group
+     */
+    public Annotation(Lipid lipid, double mz, double intensity, double retentionTime, IonizationMode ionizationMode, PeakGroup groupedSignals) {
         this.lipid = lipid;
         this.mz = mz;
         this.rtMin = retentionTime;
         this.intensity = intensity;
         this.ionizationMode = ionizationMode;
-        // !!TODO This set should be sorted according to help the program to deisotope the signals plus detect the adduct
-        //In order for the TreeSet to work, the Peak class must implement Comparable, the compareTo method must be implemented to compare the mz values of the peaks
-        //TreeSet uses the natural ordering of the elements — which is now defined in Peak.compareTo(...) as mz ascending.
-        //Removes duplicates based on comparison (compareTo) not on equals()
-        this.groupedSignals = new TreeSet<>(groupedSignals);
-        this.score = 0;
-        this.totalScoresApplied = 0;
+        this.groupedSignals = groupedSignals;
+        this.scoreState = 0;
     }
 
     public Lipid getLipid() {
         return lipid;
     }
 
+    // Properties of the lipid at the annotation level, so the rules constrain "carbonCount == $carbons" and the
+    // joins are indexed instead of evaluating lipid.getCarbonCount() for every pair
+
+    public String getLipidType() {
+        return lipid.getLipidType();
+    }
+
+    public LipidClass getLipidClass() {
+        return lipid.getLipidClass();
+    }
+
+    public int getLipidClassRank() {
+        return lipid.getLipidClass().getElutionRank();
+    }
+
+    public int getCarbonCount() {
+        return lipid.getCarbonCount();
+    }
+
+    public int getDoubleBondsCount() {
+        return lipid.getDoubleBondsCount();
+    }
+
     public double getMz() {
         return mz;
     }
@@ -79,6 +121,22 @@ public class Annotation {
         this.adduct = adduct;
     }
 
+    /**
+     * @return ppm error between the neutral mass of the mz with the adduct and the exact mass of the lipid formula
+     * @throws IllegalStateException if the adduct is not set or not in {@link AdductList}, or if the lipid has no
+     *                               monoisotopic mass (no formula that can be parsed)
+     */
+    public int getPPMError() {
+        AdductDescriptor descriptor = adduct == null ? null : AdductList.getDescriptor(adduct);
+        if (descriptor == null) {
+            throw new IllegalStateException("No known adduct to compute the ppm error of " + this);
+        }
+        if (Double.isNaN(lipid.getMonoisotopicMass())) {
+            throw new IllegalStateException("No monoisotopic mass to compute the ppm error of " + this);
+        }
+        return Adduct.calculatePPMIncrement(descriptor.toMonoisotopicMass(mz), lipid.getMonoisotopicMass());
+    }
+
     public double getIntensity() {
         return intensity;
     }
@@ -87,23 +145,46 @@ public class Annotation {
         return ionizationMode;
     }
 
+    /**
+     * @return new Peak objects with the grouped signals, sorted by mz
+     */
     public Set<Peak> getGroupedSignals() {
-        return Collections.unmodifiableSet(groupedSignals);
+        return groupedSignals.toPeaks();
+    }
+
+    public PeakGroup getPeakGroup() {
+        return groupedSignals;
     }
 
 
     public int getScore() {
-        return score;
+        return score(scoreState);
     }
 
     public void setScore(int score) {
-        this.score = score;
+        long state;
+        do {
+            state = scoreState;
+        } while (!SCORE_STATE.compareAndSet(this, state, pack(score, scoresApplied(state))));
     }
 
     // !CHECK Take into account that the score should be normalized between -1 and 1
+    // Thread safe and lock free: rules or engines running in parallel can score the same annotation, and the result
+    // does not depend on the order of the calls
     public void addScore(int delta) {
-        this.score += delta;
-        this.totalScoresApplied++;
+        addScore(delta, 1);
+    }
+
+    /**
+     * Same effect as calling {@link #addScore(int)} scoresApplied times with deltas that add up to delta
+     */
+    void addScore(int delta, int scoresApplied) {
+        // score * 2^32 + count is linear, so negative deltas and counts (reverts) add up correctly as well
+        SCORE_STATE.getAndAdd(this, ((long) delta << 32) + scoresApplied);
+    }
+
+    public int getTotalScoresApplied() {
+        return scoresApplied(scoreState);
     }
 
     /**
@@ -111,7 +192,22 @@ public class Annotation {
      * has been applied.
      */
     public double getNormalizedScore() {
-        return (double) this.score / this.totalScoresApplied;
+        // One read, so the score and the count are from the same moment
+        long state = scoreState;
+        return (double) score(state) / scoresApplied(state);
+    }
+
+    private static long pack(int score, int scoresApplied) {
+        return ((long) score << 32) + scoresApplied;
+    }
+
+    private static int score(long state) {
+        // Without the signed count what is left is exactly score * 2^32
+        return (int) ((state - (int) state) >> 32);
+    }
+
+    private static int scoresApplied(long state) {
+        return (int) state;
     }
 
     @Override
@@ -132,99 +228,101 @@ public class Annotation {
     @Override
     public String toString() {
         return String.format("Annotation(%s, mz=%.4f, RT=%.2f, adduct=%s, intensity=%.1f, score=%d)",
-                lipid.getName(), mz, rtMin, adduct, intensity, score);
+                lipid.getName(), mz, rtMin, adduct, intensity, getScore());
     }
 
 
     // !!TODO Detect the adduct with an algorithm or with drools, up to the user.
 
     //ALGORITHM DONE BY GONZALO FERNANDEZ AND FERNANDO DE MEDINA
+    // For every adduct hypothesis of the annotation (in AdductList order) we compute the monoisotopic mass, and from it
+    // the mz that the compound would show with every other adduct. The first hypothesis for which any of those mzs is
+    // found among the grouped peaks (other than the annotation peak itself) is the detected adduct.
+    // The peaks are sorted by mz, so each expected mz is looked up with a binary search instead of a scan of all peaks.
     public String detectAdductFromSignals(IonizationMode ionizationMode, double mzTolerance) {
-        // Define la tolerancia en ppm para considerar dos masas como equivalentes
-
-
-        if (groupedSignals == null || groupedSignals.size() < 2) {
-            System.out.println("detectAdduct: Not enough signals (" +
-                    (groupedSignals == null ? 0 : groupedSignals.size()) + ")");
-            return "Unknown";
-        }
-
-        // Solo se ejecuta si la ionización es positiva
-        if (ionizationMode == IonizationMode.POSITIVE) {
-
-            // Recorremos todos los posibles aductos para la anotación principal
-            for (Map.Entry<String, Double> entry : AdductList.MAPMZPOSITIVEADDUCTS.entrySet()) {
-
-                String adductAnnotation = entry.getKey();
-                double monoisotopicMassAdduct = Adduct.getMonoisotopicMassFromMZ(this.mz, adductAnnotation);
+        PipelineEvents.AdductDetection event = new PipelineEvents.AdductDetection();
+        event.begin();
+        String detected = detectAdductFromSignals(ionizationMode, mzTolerance, groupedSignals);
+        commit(event, groupedSignals.size(), detected);
+        return detected;
+    }
 
-                System.out.println("\n--- Probando aducto para la anotación: " + adductAnnotation + " ---");
-                System.out.println("Masa monoisotópica estimada de la anotación con " + adductAnnotation + ": " + monoisotopicMassAdduct);
+    /**
+     * Same as {@link #detectAdductFromSignals(IonizationMode, double)} after collapsing the isotope envelopes of the
+     * grouped peaks, so the adduct hypotheses are only checked against monoisotopic peaks
+     */
+    public String detectAdductFromSignals(IonizationMode ionizationMode, double mzTolerance, Deisotoper deisotoper) {
+        PipelineEvents.AdductDetection event = new PipelineEvents.AdductDetection();
+        event.begin();
+        PeakGroup monoisotopicSignals = deisotoper.deisotope(groupedSignals);
+        String detected = detectAdductFromSignals(ionizationMode, mzTolerance, monoisotopicSignals);
+        commit(event, monoisotopicSignals.size(), detected);
+        return detected;
+    }
 
+    /**
+     * The k best adduct hypotheses of the annotation by supporting peaks, ppm error and intensity, the alternatives to
+     * the adduct returned by {@link #detectAdductFromSignals(IonizationMode, double)}. That one follows the priority of
+     * {@link AdductList}, so it is not always the first of the ranking
+     *
+     * @return the hypotheses supported by the grouped peaks, best first, empty if there is none
+     */
+    public List<AdductHypothesis> rankAdductsFromSignals(IonizationMode ionizationMode, double mzTolerance, int k) {
+        return rankAdducts(this.mz, ionizationMode, mzTolerance, groupedSignals, k);
+    }
 
-                // Recorremos cada uno de los picos agrupados dentro de la anotación
+    /**
+     * Same as {@link #rankAdductsFromSignals(IonizationMode, double, int)} against the monoisotopic peaks
+     */
+    public List<AdductHypothesis> rankAdductsFromSignals(IonizationMode ionizationMode, double mzTolerance, int k,
+                                                         Deisotoper deisotoper) {
+        return rankAdducts(this.mz, ionizationMode, mzTolerance, deisotoper.deisotope(groupedSignals), k);
+    }
 
-                for (Peak peak : groupedSignals) {
-                    double peakMz = peak.getMz();
-                    System.out.println("\n   Analizando peak con m/z = " + peakMz);
+    private void commit(PipelineEvents.AdductDetection event, int monoisotopicPeaks, String detected) {
+        if (event.shouldCommit()) {
+            event.mz = mz;
+            event.peaks = groupedSignals.size();
+            event.monoisotopicPeaks = monoisotopicPeaks;
+            event.adduct = detected;
+            event.commit();
+        }
+    }
 
-                    if (Math.abs(peakMz - this.mz) <= mzTolerance) {
-                        //It's the same peak as the objective, so I skip it.
-                        continue;
-                    }
+    private String detectAdductFromSignals(IonizationMode ionizationMode, double mzTolerance, PeakGroup signals) {
+        return detectAdduct(this.mz, ionizationMode, mzTolerance, signals);
+    }
 
-                    // Probamos todos los posibles aductos para ese peak
-                    for (Map.Entry<String, Double> entry2 : AdductList.MAPMZPOSITIVEADDUCTS.entrySet()) {
-                        String adductPeak = entry2.getKey();
-                        double mzForThatPeak = Adduct.getMZFromMonoisotopicMass(monoisotopicMassAdduct, adductPeak);
-                        double diff = Math.abs(mzForThatPeak - peakMz);
-                        System.out.println("secondAdduct=" + adductPeak + ", expectedMz=" + mzForThatPeak + ", observed=" + peakMz + ", diff=" + diff);
-                        if (diff <= mzTolerance) {
-                            System.out.println("DETECTED adduct: " + adductAnnotation + " (via " + adductPeak + ")");
-                            return adductAnnotation;
-                        }
-                    }
-                }
+    /**
+     * Adduct detection of an annotation with this mz and these grouped signals, shared with {@link SampleAdductDetector}
+     *
+     * @return the first supported adduct in {@link AdductList} order, {@link #UNKNOWN_ADDUCT} if there is none
+     */
+    static String detectAdduct(double mz, IonizationMode ionizationMode, double mzTolerance, PeakGroup signals) {
+        if (!hasEnoughSignals(mz, signals) || ionizationMode == null) {
+            return UNKNOWN_ADDUCT;
+        }
+        AdductMatcher matcher = AdductMatcher.forMode(ionizationMode);
+        int detected = matcher.findFirstSupportedAdduct(mz, signals, mzTolerance);
+        return detected >= 0 ? matcher.getAdduct(detected).getName() : UNKNOWN_ADDUCT;
+    }
 
+    private static List<AdductHypothesis> rankAdducts(double mz, IonizationMode ionizationMode, double mzTolerance,
+                                                      PeakGroup signals, int k) {
+        if (!hasEnoughSignals(mz, signals) || ionizationMode == null) {
+            return Collections.emptyList();
+        }
+        return AdductMatcher.forMode(ionizationMode).rankAdducts(mz, signals, mzTolerance, k);
+    }
 
+    private static boolean hasEnoughSignals(double mz, PeakGroup signals) {
+        if (signals.size() < 2) {
+            if (DiagnosticTrace.isEnabled()) {
+                DiagnosticTrace.notEnoughSignals(mz, signals.size());
             }
-        } else if (ionizationMode == IonizationMode.NEGATIVE) {
-            // Recorremos todos los posibles aductos para la anotación principal
-            for (Map.Entry<String, Double> entry : AdductList.MAPMZNEGATIVEADDUCTS.entrySet()) {
-
-                String adductAnnotation = entry.getKey();
-                double monoisotopicMassAdduct = Adduct.getMonoisotopicMassFromMZ(this.mz, adductAnnotation);
-
-                System.out.println("\n--- Probando aducto para la anotación: " + adductAnnotation + " ---");
-                System.out.println("Masa monoisotópica estimada de la anotación con " + adductAnnotation + ": " + monoisotopicMassAdduct);
-
-
-                // Recorremos cada uno de los picos agrupados dentro de la anotación
-
-                for (Peak peak : groupedSignals) {
-                    double peakMz = peak.getMz();
-                    System.out.println("\n   Analizando peak con m/z = " + peakMz);
-
-                    if (Math.abs(peakMz - this.mz) <= mzTolerance) {
-                        //It's the same peak as the objective, so I skip it.
-                        continue;
-                    }
-
-                    // Probamos todos los posibles aductos para ese peak
-                    for (Map.Entry<String, Double> entry2 : AdductList.MAPMZNEGATIVEADDUCTS.entrySet()) {
-                        String adductPeak = entry2.getKey();
-                        double mzForThatPeak = Adduct.getMZFromMonoisotopicMass(monoisotopicMassAdduct, adductPeak);
-                        double diff = Math.abs(mzForThatPeak - peakMz);
-                        System.out.println("secondAdduct=" + adductPeak + ", expectedMz=" + mzForThatPeak + ", observed=" + peakMz + ", diff=" + diff);
-                        if (diff <= mzTolerance) {
-                            System.out.println("DETECTED adduct: " + adductAnnotation + " (via " + adductPeak + ")");
-                            return adductAnnotation;
-                        }
-                    }
-                }
-            }
+            return false;
         }
-        return "Unkown";
+        return true;
     }
 
 
@@ -0,0 +1,137 @@
+package lipid;
+
+import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Turns features into annotations. For every feature and every adduct of its ionization mode the neutral mass is
+ * computed with {@link Adduct}, and every lipid of the catalogue within the ppm tolerance of that mass becomes an
+ * {@link Annotation} with the adduct already set.
+ * <p>
+ * Lists of features are annotated in parallel on a fork-join pool, in chunks of consecutive features. The result keeps
+ * the order of a sequential run: features in input order, adducts in {@link AdductList} order and lipids in neutral
+ * mass order. Thread safe.
+ */
+public class AnnotationEngine {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final LipidCatalogue catalogue;
+    private final int ppmTolerance;
+    private final ForkJoinPool forkJoinPool;
+    private final int chunkSize;
+
+    /**
+     * Annotate on the common fork-join pool
+     *
+     * @param catalogue    lipids that can be annotated
+     * @param ppmTolerance tolerance of the neutral mass in ppm
+     */
+    public AnnotationEngine(LipidCatalogue catalogue, int ppmTolerance) {
+        this(catalogue, ppmTolerance, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param catalogue    lipids that can be annotated
+     * @param ppmTolerance tolerance of the neutral mass in ppm
+     * @param forkJoinPool pool that annotates the chunks
+     * @param chunkSize    number of features annotated by each task
+     */
+    public AnnotationEngine(LipidCatalogue catalogue, int ppmTolerance, ForkJoinPool forkJoinPool, int chunkSize) {
+        if (ppmTolerance < 0) {
+            throw new IllegalArgumentException("The ppm tolerance cannot be negative, got " + ppmTolerance);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1, got " + chunkSize);
+        }
+        this.catalogue = catalogue;
+        this.ppmTolerance = ppmTolerance;
+        this.forkJoinPool = forkJoinPool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the annotations of one feature
+     */
+    public List<Annotation> annotate(Feature feature) {
+        List<Annotation> annotations = new ArrayList<>();
+        annotate(feature, annotations);
+        return annotations;
+    }
+
+    /**
+     * Annotate the features in parallel
+     *
+     * @return the annotations of all the features, in the order of the features
+     */
+    public List<Annotation> annotate(List<Feature> features) {
+        int chunks = (features.size() + chunkSize - 1) / chunkSize;
+        List<List<Annotation>> results = new ArrayList<>(Collections.nCopies(chunks, null));
+        forkJoinPool.invoke(new AnnotateChunks(features, results, 0, chunks));
+        int total = 0;
+        for (List<Annotation> chunk : results) {
+            total += chunk.size();
+        }
+        List<Annotation> annotations = new ArrayList<>(total);
+        for (List<Annotation> chunk : results) {
+            annotations.addAll(chunk);
+        }
+        return annotations;
+    }
+
+    private void annotate(Feature feature, List<Annotation> annotations) {
+        for (AdductDescriptor adduct : AdductList.getDescriptors(feature.getIonizationMode())) {
+            double neutralMass = Adduct.getMonoisotopicMassFromMZ(feature.getMz(), adduct);
+            for (Lipid lipid : catalogue.findByMass(neutralMass, ppmTolerance)) {
+                Annotation annotation = new Annotation(lipid, feature.getMz(), feature.getIntensity(),
+                        feature.getRtMin(), feature.getIonizationMode(), feature.getGroupedSignals());
+                annotation.setAdduct(adduct.getName());
+                annotations.add(annotation);
+            }
+        }
+    }
+
+    /**
+     * Annotates the chunks [fromChunk, toChunk), splitting them in halves until there is only one
+     */
+    private final class AnnotateChunks extends RecursiveAction {
+        private final List<Feature> features;
+        private final List<List<Annotation>> results; // one slot per chunk, each set by one task
+        private final int fromChunk;
+        private final int toChunk;
+
+        AnnotateChunks(List<Feature> features, List<List<Annotation>> results, int fromChunk, int toChunk) {
+            this.features = features;
+            this.results = results;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new AnnotateChunks(features, results, fromChunk, middle),
+                        new AnnotateChunks(features, results, middle, toChunk));
+                return;
+            }
+            if (fromChunk == toChunk) {
+                return;
+            }
+            int from = fromChunk * chunkSize;
+            int to = Math.min(from + chunkSize, features.size());
+            List<Annotation> annotations = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                annotate(features.get(i), annotations);
+            }
+            results.set(fromChunk, annotations);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package lipid;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar (struct of arrays) storage of the annotations of one sample. Every annotation is a row, and every field is
+ * a primitive array: around 45 bytes per annotation instead of an {@link Annotation} object with its boxed fields,
+ * its own TreeSet of peaks and its adduct String.
+ * <p>
+ * Lipids are interned: every distinct {@link Lipid} is stored once and rows keep its lipid id (the index in the
+ * table, not the compound id). Adducts are stored by {@link AdductDescriptor#getId()}, -1 when the adduct is not set
+ * or not in {@link AdductList}.
+ * <p>
+ * The grouped peaks are not part of the table. Rows are converted to {@link Annotation} with
+ * {@link #toAnnotations()} when they have to go through Drools, and the scores are copied back with
+ * {@link #updateScores(List)}. Not thread safe.
+ */
+public class AnnotationTable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final List<Lipid> lipids = new ArrayList<>();
+    private final Map<Lipid, Integer> lipidIds = new HashMap<>();
+
+    private int size;
+    private double[] mzs;
+    private double[] rts;
+    private double[] intensities;
+    private int[] lipidIdColumn;
+    private int[] adductIds;
+    private int[] scores;
+    private int[] scoresApplied;
+    private boolean[] positiveModes;
+
+    public AnnotationTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity expected number of rows, the table grows if needed
+     */
+    public AnnotationTable(int capacity) {
+        int initialCapacity = Math.max(1, capacity);
+        this.mzs = new double[initialCapacity];
+        this.rts = new double[initialCapacity];
+        this.intensities = new double[initialCapacity];
+        this.lipidIdColumn = new int[initialCapacity];
+        this.adductIds = new int[initialCapacity];
+        this.scores = new int[initialCapacity];
+        this.scoresApplied = new int[initialCapacity];
+        this.positiveModes = new boolean[initialCapacity];
+    }
+
+    /**
+     * @return a table with one row per annotation, in iteration order, with their adducts and scores
+     */
+    public static AnnotationTable fromAnnotations(Collection<Annotation> annotations) {
+        AnnotationTable table = new AnnotationTable(annotations.size());
+        for (Annotation annotation : annotations) {
+            int row = table.addRow(annotation.getLipid(), annotation.getMz(), annotation.getRtMin(),
+                    annotation.getIntensity(), annotation.getIonizationMode(), adductId(annotation.getAdduct()));
+            table.scores[row] = annotation.getScore();
+            table.scoresApplied[row] = annotation.getTotalScoresApplied();
+        }
+        return table;
+    }
+
+    private static int adductId(String adduct) {
+        if (adduct == null) {
+            return -1;
+        }
+        AdductDescriptor descriptor = AdductList.getDescriptor(adduct);
+        return descriptor == null ? -1 : descriptor.getId();
+    }
+
+    /**
+     * @param adductId {@link AdductDescriptor#getId()} or -1 if the adduct is unknown
+     * @return index of the new row
+     */
+    public int addRow(Lipid lipid, double mz, double retentionTime, double intensity, IonizationMode ionizationMode, int adductId) {
+        if (size == mzs.length) {
+            grow();
+        }
+        int row = size++;
+        mzs[row] = mz;
+        rts[row] = retentionTime;
+        intensities[row] = intensity;
+        lipidIdColumn[row] = internLipid(lipid);
+        adductIds[row] = adductId;
+        positiveModes[row] = ionizationMode == IonizationMode.POSITIVE;
+        return row;
+    }
+
+    private int internLipid(Lipid lipid) {
+        Integer lipidId = lipidIds.get(lipid);
+        if (lipidId == null) {
+            lipidId = lipids.size();
+            lipids.add(lipid);
+            lipidIds.put(lipid, lipidId);
+        }
+        return lipidId;
+    }
+
+    private void grow() {
+        int capacity = mzs.length + (mzs.length >> 1) + 1;
+        mzs = Arrays.copyOf(mzs, capacity);
+        rts = Arrays.copyOf(rts, capacity);
+        intensities = Arrays.copyOf(intensities, capacity);
+        lipidIdColumn = Arrays.copyOf(lipidIdColumn, capacity);
+        adductIds = Arrays.copyOf(adductIds, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        scoresApplied = Arrays.copyOf(scoresApplied, capacity);
+        positiveModes = Arrays.copyOf(positiveModes, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of distinct lipids of the table
+     */
+    public int getLipidCount() {
+        return lipids.size();
+    }
+
+    public Lipid getLipidById(int lipidId) {
+        return lipids.get(lipidId);
+    }
+
+    public double getMz(int row) {
+        return mzs[checkRow(row)];
+    }
+
+    public double getRtMin(int row) {
+        return rts[checkRow(row)];
+    }
+
+    public double getIntensity(int row) {
+        return intensities[checkRow(row)];
+    }
+
+    public int getLipidId(int row) {
+        return lipidIdColumn[checkRow(row)];
+    }
+
+    public Lipid getLipid(int row) {
+        return lipids.get(getLipidId(row));
+    }
+
+    public IonizationMode getIonizationMode(int row) {
+        return positiveModes[checkRow(row)] ? IonizationMode.POSITIVE : IonizationMode.NEGATIVE;
+    }
+
+    /**
+     * @return {@link AdductDescriptor#getId()} of the adduct of the row, -1 if it is unknown
+     */
+    public int getAdductId(int row) {
+        return adductIds[checkRow(row)];
+    }
+
+    public void setAdductId(int row, int adductId) {
+        adductIds[checkRow(row)] = adductId;
+    }
+
+    /**
+     * @return the adduct name of the row, null if it is unknown
+     */
+    public String getAdduct(int row) {
+        int adductId = getAdductId(row);
+        return adductId < 0 ? null : AdductList.getDescriptor(adductId).getName();
+    }
+
+    public int getScore(int row) {
+        return scores[checkRow(row)];
+    }
+
+    public int getTotalScoresApplied(int row) {
+        return scoresApplied[checkRow(row)];
+    }
+
+    /**
+     * Same as {@link Annotation#addScore(int)} on the row
+     */
+    public void addScore(int row, int delta) {
+        addScore(row, delta, 1);
+    }
+
+    /**
+     * Same as {@link Annotation#addScore(int, int)} on the row
+     */
+    public void addScore(int row, int delta, int applied) {
+        checkRow(row);
+        scores[row] += delta;
+        scoresApplied[row] += applied;
+    }
+
+    /**
+     * Same as {@link Annotation#getNormalizedScore()} on the row
+     */
+    public double getNormalizedScore(int row) {
+        return (double) getScore(row) / getTotalScoresApplied(row);
+    }
+
+    /**
+     * @return a view of the row. It reads the table, so it sees later changes of the row
+     */
+    public Row row(int row) {
+        return new Row(checkRow(row));
+    }
+
+    /**
+     * @return a new annotation with the data, adduct and scores of the row (without grouped peaks)
+     */
+    public Annotation toAnnotation(int row) {
+        Annotation annotation = new Annotation(getLipid(row), mzs[row], intensities[row], rts[row], getIonizationMode(row));
+        annotation.setAdduct(getAdduct(row));
+        annotation.addScore(scores[row], scoresApplied[row]);
+        return annotation;
+    }
+
+    /**
+     * @return one annotation per row, in row order
+     */
+    public List<Annotation> toAnnotations() {
+        List<Annotation> annotations = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            annotations.add(toAnnotation(row));
+        }
+        return annotations;
+    }
+
+    /**
+     * Copy back the scores (and adducts) of annotations obtained with {@link #toAnnotations()} and scored afterwards
+     *
+     * @param annotations one annotation per row, in row order
+     */
+    public void updateScores(List<Annotation> annotations) {
+        if (annotations.size() != size) {
+            throw new IllegalArgumentException("Expected " + size + " annotations but got " + annotations.size());
+        }
+        for (int row = 0; row < size; row++) {
+            Annotation annotation = annotations.get(row);
+            scores[row] = annotation.getScore();
+            scoresApplied[row] = annotation.getTotalScoresApplied();
+            adductIds[row] = adductId(annotation.getAdduct());
+        }
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        }
+        return row;
+    }
+
+    /**
+     * Read only view of one row of the table
+     */
+    public final class Row {
+        private final int index;
+
+        private Row(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Lipid getLipid() {
+            return AnnotationTable.this.getLipid(index);
+        }
+
+        public double getMz() {
+            return mzs[index];
+        }
+
+        public double getRtMin() {
+            return rts[index];
+        }
+
+        public double getIntensity() {
+            return intensities[index];
+        }
+
+        public IonizationMode getIonizationMode() {
+            return AnnotationTable.this.getIonizationMode(index);
+        }
+
+        public String getAdduct() {
+            return AnnotationTable.this.getAdduct(index);
+        }
+
+        public int getScore() {
+            return scores[index];
+        }
+
+        public int getTotalScoresApplied() {
+            return scoresApplied[index];
+        }
+
+        public double getNormalizedScore() {
+            return AnnotationTable.this.getNormalizedScore(index);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Row(%d, %s, mz=%.4f, RT=%.2f, adduct=%s, intensity=%.1f, score=%d)",
+                    index, getLipid().getName(), getMz(), getRtMin(), getAdduct(), getIntensity(), getScore());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package lipid;
+
+import java.util.Arrays;
+
+/**
+ * Collapses the isotope envelopes of a group of peaks into their monoisotopic peaks. The isotopes of a peak with
+ * charge z are spaced 1.00336/z (the 13C - 12C mass difference) and, for lipids, each one is less intense than the
+ * previous one.
+ * <p>
+ * The peaks are sorted by mz, so the envelopes are found in a single pass. The first isotope of every peak is looked
+ * up with a cursor per charge that only moves forward, as the mz expected for it grows with the peak being checked:
+ * O(peaks * maxCharge) in total. The envelopes of different peaks overlap in mz, so the further isotopes of an
+ * envelope are looked up with a binary search, O(isotopes * log peaks). Both lookups also check the peaks within the
+ * tolerance of the expected mz, which are few unless the tolerance is wide for the density of the peaks. Higher
+ * charges are checked first, as every isotope of a charge 2 envelope with an even index is also at the charge 1
+ * spacing. Thread safe.
+ */
+public class Deisotoper {
+
+    public static final double ISOTOPE_SPACING = 1.00336;
+
+    private final double mzTolerance;
+    private final int maxCharge;
+
+    /**
+     * @param mzTolerance absolute tolerance in Da of the isotope spacing
+     * @param maxCharge   highest charge of the envelopes
+     */
+    public Deisotoper(double mzTolerance, int maxCharge) {
+        if (maxCharge < 1) {
+            throw new IllegalArgumentException("The maximum charge must be at least 1, got " + maxCharge);
+        }
+        this.mzTolerance = mzTolerance;
+        this.maxCharge = maxCharge;
+    }
+
+    /**
+     * @return the peaks of the group that are not isotopes of another peak of the group, a view of the same pool
+     */
+    public PeakGroup deisotope(PeakGroup peaks) {
+        int size = peaks.size();
+        if (size < 2) {
+            return peaks;
+        }
+        double[] mzs = new double[size];
+        double[] intensities = new double[size];
+        for (int i = 0; i < size; i++) {
+            mzs[i] = peaks.getMz(i);
+            intensities[i] = peaks.getIntensity(i);
+        }
+        boolean[] isotopes = new boolean[size];
+        int[] cursors = new int[maxCharge + 1];
+        for (int i = 0; i < size; i++) {
+            if (isotopes[i]) {
+                continue;
+            }
+            for (int charge = maxCharge; charge >= 1; charge--) {
+                double spacing = ISOTOPE_SPACING / charge;
+                double lowestMz = mzs[i] + spacing - mzTolerance;
+                int cursor = Math.max(cursors[charge], i + 1);
+                while (cursor < size && mzs[cursor] < lowestMz) {
+                    cursor++;
+                }
+                cursors[charge] = cursor;
+                int next = findIsotope(mzs, intensities, i, cursor, spacing);
+                if (next < 0) {
+                    continue;
+                }
+                // Follow the envelope while the next isotope is there and less intense
+                int last = i;
+                while (next >= 0) {
+                    isotopes[next] = true;
+                    last = next;
+                    next = findIsotope(mzs, intensities, last,
+                            lowerBound(mzs, mzs[last] + spacing - mzTolerance, last + 1), spacing);
+                }
+                break;
+            }
+        }
+        int[] monoisotopic = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isotopes[i]) {
+                monoisotopic[count++] = peaks.getPoolIndex(i);
+            }
+        }
+        return count == size ? peaks : peaks.getPool().group(Arrays.copyOf(monoisotopic, count));
+    }
+
+    /**
+     * @return first position from from on with mz greater than or equal to key, mzs.length if there is none
+     */
+    private static int lowerBound(double[] mzs, double key, int from) {
+        int low = from;
+        int high = mzs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mzs[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param from first position that can hold the isotope
+     * @return position of the first peak at the isotope spacing of the peak at position and less intense, -1 if none
+     */
+    private int findIsotope(double[] mzs, double[] intensities, int position, int from, double spacing) {
+        double expectedMz = mzs[position] + spacing;
+        int i = Math.max(from, position + 1);
+        while (i < mzs.length && mzs[i] < expectedMz - mzTolerance) {
+            i++;
+        }
+        for (int j = i; j < mzs.length && mzs[j] <= expectedMz + mzTolerance; j++) {
+            if (intensities[j] < intensities[position]) {
+                return j;
+            }
+        }
+        return -1;
+    }
+}
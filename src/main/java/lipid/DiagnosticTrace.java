@@ -0,0 +1,183 @@
+package lipid;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Diagnostic trace of the adduct detection and of the rules fired. It is off by default and can be switched on at
+ * runtime with {@link #enable(int)} or at startup with -Dlipid.trace=true (and -Dlipid.trace.sample=N).
+ * <p>
+ * When it is off the callers only read one flag, nothing is counted or formatted. When it is on, the counters of the
+ * run are updated and one of every N events is logged through SLF4J (logger "lipid.trace", INFO level).
+ * <p>
+ * The switch and the counters are process-wide: samples scored at the same time (e.g. by the BatchScoringDriver) add
+ * to the same totals, so per-sample counts need the samples to be traced one at a time, with a {@link #reset()}
+ * between them.
+ */
+public final class DiagnosticTrace {
+
+    private static final Logger LOG = LoggerFactory.getLogger("lipid.trace");
+
+    private static volatile boolean enabled = Boolean.getBoolean("lipid.trace");
+    private static volatile int sampleEvery = Math.max(1, Integer.getInteger("lipid.trace.sample", 1));
+
+    private static final LongAdder hypothesesTested = new LongAdder();
+    private static final LongAdder matches = new LongAdder();
+    private static final Map<String, LongAdder> ruleFirings = new ConcurrentHashMap<>();
+    private static final AtomicLong events = new AtomicLong();
+
+    private DiagnosticTrace() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switch on the trace
+     *
+     * @param sampleEvery log one of every sampleEvery events (1 logs all of them). The counters always count all
+     */
+    public static void enable(int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("sampleEvery must be at least 1, got " + sampleEvery);
+        }
+        DiagnosticTrace.sampleEvery = sampleEvery;
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Start a new run: all the counters are set to 0, for every thread
+     */
+    public static void reset() {
+        hypothesesTested.reset();
+        matches.reset();
+        ruleFirings.clear();
+        events.set(0);
+    }
+
+    /**
+     * @return the counters of the current run
+     */
+    public static Counters snapshot() {
+        Map<String, Long> firings = new TreeMap<>();
+        ruleFirings.forEach((rule, count) -> firings.put(rule, count.sum()));
+        return new Counters(hypothesesTested.sum(), matches.sum(), firings);
+    }
+
+    // The methods below must only be called when isEnabled() returns true
+
+    /**
+     * An adduct hypothesis of an annotation has been checked against the mz expected for another adduct
+     */
+    public static void adductHypothesis(double mz, String annotationAdduct, String peakAdduct, double expectedMz) {
+        hypothesesTested.increment();
+        if (sampled() && LOG.isInfoEnabled()) {
+            LOG.info("adduct hypothesis mz={} adduct={} secondAdduct={} expectedMz={}", mz, annotationAdduct, peakAdduct, expectedMz);
+        }
+    }
+
+    /**
+     * A grouped peak supports the adduct hypothesis
+     */
+    public static void adductMatch(double mz, String annotationAdduct, String peakAdduct) {
+        matches.increment();
+        if (sampled() && LOG.isInfoEnabled()) {
+            LOG.info("DETECTED adduct mz={} adduct={} (via {})", mz, annotationAdduct, peakAdduct);
+        }
+    }
+
+    /**
+     * The adduct cannot be detected because there are not enough grouped peaks
+     */
+    public static void notEnoughSignals(double mz, int signals) {
+        if (sampled() && LOG.isInfoEnabled()) {
+            LOG.info("detectAdduct: Not enough signals ({}) for mz={}", signals, mz);
+        }
+    }
+
+    /**
+     * Called from the consequences of lipids.drl. The flag is checked here so the rules stay a single call
+     */
+    public static void ruleFired(String rule, Annotation a1, Annotation a2) {
+        if (!enabled) {
+            return;
+        }
+        ruleFirings.computeIfAbsent(rule, r -> new LongAdder()).increment();
+        if (sampled() && LOG.isInfoEnabled()) {
+            LOG.info("rule \"{}\" fired for {} and {}", rule, a1, a2);
+        }
+    }
+
+    /**
+     * Bulk version of {@link #ruleFired(String, Annotation, Annotation)} for engines that score many pairs at once
+     */
+    public static void rulesFired(String rule, long firings) {
+        if (!enabled || firings == 0) {
+            return;
+        }
+        ruleFirings.computeIfAbsent(rule, r -> new LongAdder()).add(firings);
+        if (sampled() && LOG.isInfoEnabled()) {
+            LOG.info("rule \"{}\" fired {} times", rule, firings);
+        }
+    }
+
+    private static boolean sampled() {
+        int every = sampleEvery;
+        return every == 1 || events.incrementAndGet() % every == 0;
+    }
+
+    /**
+     * Counters of one run
+     */
+    public static final class Counters {
+        private final long hypothesesTested;
+        private final long matches;
+        private final Map<String, Long> ruleFirings;
+
+        Counters(long hypothesesTested, long matches, Map<String, Long> ruleFirings) {
+            this.hypothesesTested = hypothesesTested;
+            this.matches = matches;
+            this.ruleFirings = Collections.unmodifiableMap(ruleFirings);
+        }
+
+        public long getHypothesesTested() {
+            return hypothesesTested;
+        }
+
+        public long getMatches() {
+            return matches;
+        }
+
+        /**
+         * @return number of times each rule has fired, by rule name
+         */
+        public Map<String, Long> getRuleFirings() {
+            return ruleFirings;
+        }
+
+        public long getRuleFirings(String rule) {
+            return ruleFirings.getOrDefault(rule, 0L);
+        }
+
+        @Override
+        public String toString() {
+            return "Counters{" +
+                    "hypothesesTested=" + hypothesesTested +
+                    ", matches=" + matches +
+                    ", ruleFirings=" + ruleFirings +
+                    '}';
+        }
+    }
+}
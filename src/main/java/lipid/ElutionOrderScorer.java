@@ -0,0 +1,348 @@
+package lipid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToIntFunction;
+
+/**
+ * Native implementation of the six elution order rules of lipids.drl. The effects on the annotations
+ * ({@link Annotation#addScore(int)}) are exactly the same, but instead of joining every annotation with every other
+ * annotation (O(n^2)) the annotations are partitioned and every partition is scored in O(n log n):
+ * <ul>
+ *     <li>Same type and double bonds, ordered by carbons (rules 1 and 4): more carbons, longer RT.</li>
+ *     <li>Same type and carbons, ordered by double bonds (rules 2 and 5): more double bonds, shorter RT.</li>
+ *     <li>Same carbons and double bonds, ordered by lipid type rank (rules 3 and 6): PG < PE < PI < PA < PS < PC.</li>
+ * </ul>
+ * Within a partition every pair of annotations with different key and different RT fires exactly one rule: a positive
+ * one if the pair follows the expected order (concordant) and a negative one if it does not (discordant). So the
+ * score of an annotation is the number of concordant minus discordant partners, and both counts are obtained sorting
+ * by RT and sweeping with a Fenwick tree over the keys.
+ * <p>
+ * The partitions are independent sweeps, so they can be scored in parallel: an annotation belongs to three partitions
+ * and is scored from three threads at most, which {@link Annotation#addScore(int)} allows, and the scores are sums so
+ * they are the same as the sequential ones.
+ */
+public final class ElutionOrderScorer {
+
+    static final String RULE_CARBONS_POSITIVE = "RT positive - same type, same double bonds, more carbons";
+    static final String RULE_DOUBLE_BONDS_POSITIVE = "RT positive - same type, less double bonds, same carbons";
+    static final String RULE_TYPE_POSITIVE = "RT positive - different type, same double bonds, same carbons, RT follows PG < PE < PI < PA < PS < PC";
+    static final String RULE_CARBONS_NEGATIVE = "RT negative - same type, same double bonds, more carbons";
+    static final String RULE_DOUBLE_BONDS_NEGATIVE = "RT negative - same type, less double bonds, same carbons";
+    static final String RULE_TYPE_NEGATIVE = "RT negative - different type, same carbons/double bonds, RT follows PG < PE < PI < PA < PS < PC";
+
+    private ElutionOrderScorer() {
+    }
+
+    /**
+     * Partition key: lipid type plus the carbons or the double bonds. The lipid type may be null
+     */
+    static final class TypeAndCount {
+        private final String lipidType;
+        private final int count;
+
+        TypeAndCount(String lipidType, int count) {
+            this.lipidType = lipidType;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TypeAndCount)) return false;
+            TypeAndCount that = (TypeAndCount) o;
+            return count == that.count && Objects.equals(lipidType, that.lipidType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lipidType, count);
+        }
+    }
+
+    /**
+     * Partition key of the lipid type rule
+     */
+    static final class CarbonsAndDoubleBonds {
+        private final int carbonCount;
+        private final int doubleBondsCount;
+
+        CarbonsAndDoubleBonds(int carbonCount, int doubleBondsCount) {
+            this.carbonCount = carbonCount;
+            this.doubleBondsCount = doubleBondsCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CarbonsAndDoubleBonds)) return false;
+            CarbonsAndDoubleBonds that = (CarbonsAndDoubleBonds) o;
+            return carbonCount == that.carbonCount && doubleBondsCount == that.doubleBondsCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * carbonCount + doubleBondsCount;
+        }
+    }
+
+    /**
+     * @return the sweeps of the partitions of the three rule pairs
+     */
+    private static List<Sweep> partition(Collection<Annotation> annotations) {
+        Map<TypeAndCount, List<Annotation>> byTypeAndDoubleBonds = new HashMap<>();
+        Map<TypeAndCount, List<Annotation>> byTypeAndCarbons = new HashMap<>();
+        Map<CarbonsAndDoubleBonds, List<Annotation>> byCarbonsAndDoubleBonds = new HashMap<>();
+        for (Annotation annotation : annotations) {
+            if (Double.isNaN(annotation.getRtMin())) {
+                // No RT comparison holds with NaN, so it never fires any rule
+                continue;
+            }
+            Lipid lipid = annotation.getLipid();
+            byTypeAndDoubleBonds.computeIfAbsent(new TypeAndCount(lipid.getLipidType(), lipid.getDoubleBondsCount()),
+                    k -> new ArrayList<>()).add(annotation);
+            byTypeAndCarbons.computeIfAbsent(new TypeAndCount(lipid.getLipidType(), lipid.getCarbonCount()),
+                    k -> new ArrayList<>()).add(annotation);
+            byCarbonsAndDoubleBonds.computeIfAbsent(new CarbonsAndDoubleBonds(lipid.getCarbonCount(), lipid.getDoubleBondsCount()),
+                    k -> new ArrayList<>()).add(annotation);
+        }
+
+        List<Sweep> sweeps = new ArrayList<>(byTypeAndDoubleBonds.size() + byTypeAndCarbons.size()
+                + byCarbonsAndDoubleBonds.size());
+        for (List<Annotation> partition : byTypeAndDoubleBonds.values()) {
+            sweeps.add(new Sweep(partition, a -> a.getLipid().getCarbonCount(), 1,
+                    RULE_CARBONS_POSITIVE, RULE_CARBONS_NEGATIVE));
+        }
+        for (List<Annotation> partition : byTypeAndCarbons.values()) {
+            // More double bonds elute earlier, so the concordant pairs are the negative evidence
+            sweeps.add(new Sweep(partition, a -> a.getLipid().getDoubleBondsCount(), -1,
+                    RULE_DOUBLE_BONDS_NEGATIVE, RULE_DOUBLE_BONDS_POSITIVE));
+        }
+        for (List<Annotation> partition : byCarbonsAndDoubleBonds.values()) {
+            sweeps.add(new Sweep(partition, a -> a.getLipid().getLipidTypeRank(), 1,
+                    RULE_TYPE_POSITIVE, RULE_TYPE_NEGATIVE));
+        }
+        return sweeps;
+    }
+
+    /**
+     * Apply the elution order rules to the annotations
+     *
+     * @param annotations annotations of one sample
+     * @return number of rule firings, the same number that Drools would report
+     */
+    public static long score(Collection<Annotation> annotations) {
+        long firings = 0;
+        for (Sweep sweep : partition(annotations)) {
+            firings += sweep.run();
+        }
+        return firings;
+    }
+
+    /**
+     * Apply the elution order rules to the annotations of one large sample with the threads of the pool. The scores
+     * and the number of firings are the same as {@link #score(Collection)}
+     *
+     * @param annotations annotations of one sample
+     * @param pool        threads that sweep the partitions
+     * @return number of rule firings
+     */
+    public static long score(Collection<Annotation> annotations, ForkJoinPool pool) {
+        List<Sweep> sweeps = partition(annotations);
+        sweeps.removeIf(sweep -> sweep.partition.size() < 2);
+        // Largest partitions first, so the longest sweeps do not start last
+        sweeps.sort(Comparator.comparingInt((Sweep sweep) -> sweep.partition.size()).reversed());
+        return pool.invoke(new SweepTask(sweeps, 0, sweeps.size()));
+    }
+
+    /**
+     * One partition with the rules of its key
+     */
+    private static final class Sweep {
+        private final List<Annotation> partition;
+        private final ToIntFunction<Annotation> key;
+        private final int concordantDelta;
+        private final String concordantRule;
+        private final String discordantRule;
+
+        Sweep(List<Annotation> partition, ToIntFunction<Annotation> key, int concordantDelta, String concordantRule,
+              String discordantRule) {
+            this.partition = partition;
+            this.key = key;
+            this.concordantDelta = concordantDelta;
+            this.concordantRule = concordantRule;
+            this.discordantRule = discordantRule;
+        }
+
+        long run() {
+            return sweep(partition, key, concordantDelta, concordantRule, discordantRule);
+        }
+    }
+
+    /**
+     * Sweeps of the partitions [from, to), split in halves while there is more than one
+     */
+    private static final class SweepTask extends RecursiveTask<Long> {
+        private final List<Sweep> sweeps;
+        private final int from;
+        private final int to;
+
+        SweepTask(List<Sweep> sweeps, int from, int to) {
+            this.sweeps = sweeps;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from == 1) {
+                return sweeps.get(from).run();
+            }
+            if (to == from) {
+                return 0L;
+            }
+            int middle = (from + to) >>> 1;
+            SweepTask right = new SweepTask(sweeps, middle, to);
+            right.fork();
+            long left = new SweepTask(sweeps, from, middle).compute();
+            return left + right.join();
+        }
+    }
+
+    /**
+     * Score one partition
+     *
+     * @param partition        annotations of the partition
+     * @param key              order of the annotations in the partition
+     * @param concordantDelta  score of a pair whose RT order is the same as the key order (the discordant pairs score
+     *                         the opposite)
+     * @param concordantRule   rule fired by the concordant pairs (only used by the diagnostic trace)
+     * @param discordantRule   rule fired by the discordant pairs (only used by the diagnostic trace)
+     * @return number of pairs scored
+     */
+    private static long sweep(List<Annotation> partition, ToIntFunction<Annotation> key, int concordantDelta,
+                              String concordantRule, String discordantRule) {
+        int n = partition.size();
+        if (n < 2) {
+            return 0;
+        }
+        Annotation[] sorted = partition.toArray(new Annotation[0]);
+        Arrays.sort(sorted, Comparator.comparingDouble(Annotation::getRtMin));
+        double[] rts = new double[n];
+        int[] keyRanks = new int[n];
+        int distinctKeys = rankKeys(sorted, key, keyRanks);
+        for (int i = 0; i < n; i++) {
+            rts[i] = sorted[i].getRtMin();
+        }
+
+        int[] concordant = new int[n];
+        int[] discordant = new int[n];
+        int[] fenwick = new int[distinctKeys + 1];
+
+        // Annotations with a shorter RT. Lower key: concordant, higher key: discordant
+        int processed = 0;
+        for (int start = 0; start < n; ) {
+            int end = endOfGroup(rts, start);
+            for (int i = start; i < end; i++) {
+                int lower = prefixCount(fenwick, keyRanks[i]);
+                int lowerOrEqual = prefixCount(fenwick, keyRanks[i] + 1);
+                concordant[i] += lower;
+                discordant[i] += processed - lowerOrEqual;
+            }
+            for (int i = start; i < end; i++) {
+                increment(fenwick, keyRanks[i]);
+            }
+            processed += end - start;
+            start = end;
+        }
+
+        // Annotations with a longer RT. Higher key: concordant, lower key: discordant
+        Arrays.fill(fenwick, 0);
+        processed = 0;
+        for (int end = n; end > 0; ) {
+            int start = startOfGroup(rts, end);
+            for (int i = start; i < end; i++) {
+                int lower = prefixCount(fenwick, keyRanks[i]);
+                int lowerOrEqual = prefixCount(fenwick, keyRanks[i] + 1);
+                concordant[i] += processed - lowerOrEqual;
+                discordant[i] += lower;
+            }
+            for (int i = start; i < end; i++) {
+                increment(fenwick, keyRanks[i]);
+            }
+            processed += end - start;
+            end = start;
+        }
+
+        long concordantTotal = 0;
+        long discordantTotal = 0;
+        for (int i = 0; i < n; i++) {
+            int applied = concordant[i] + discordant[i];
+            if (applied > 0) {
+                sorted[i].addScore(concordantDelta * (concordant[i] - discordant[i]), applied);
+            }
+            concordantTotal += concordant[i];
+            discordantTotal += discordant[i];
+        }
+        // Every pair has been counted from both of its annotations
+        if (DiagnosticTrace.isEnabled()) {
+            DiagnosticTrace.rulesFired(concordantRule, concordantTotal / 2);
+            DiagnosticTrace.rulesFired(discordantRule, discordantTotal / 2);
+        }
+        return (concordantTotal + discordantTotal) / 2;
+    }
+
+    /**
+     * @return number of distinct keys. keyRanks[i] is the position of the key of annotations[i] among them
+     */
+    private static int rankKeys(Annotation[] annotations, ToIntFunction<Annotation> key, int[] keyRanks) {
+        int[] keys = new int[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            keys[i] = key.applyAsInt(annotations[i]);
+        }
+        int[] distinct = Arrays.stream(keys).sorted().distinct().toArray();
+        for (int i = 0; i < annotations.length; i++) {
+            keyRanks[i] = Arrays.binarySearch(distinct, keys[i]);
+        }
+        return distinct.length;
+    }
+
+    private static int endOfGroup(double[] rts, int start) {
+        int end = start + 1;
+        while (end < rts.length && rts[end] == rts[start]) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int startOfGroup(double[] rts, int end) {
+        int start = end - 1;
+        while (start > 0 && rts[start - 1] == rts[end - 1]) {
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * @return number of inserted ranks lower than rank
+     */
+    private static int prefixCount(int[] fenwick, int rank) {
+        int count = 0;
+        for (int i = rank; i > 0; i -= i & -i) {
+            count += fenwick[i];
+        }
+        return count;
+    }
+
+    private static void increment(int[] fenwick, int rank) {
+        for (int i = rank + 1; i < fenwick.length; i += i & -i) {
+            fenwick[i]++;
+        }
+    }
+}
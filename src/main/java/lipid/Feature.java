@@ -0,0 +1,70 @@
+package lipid;
+
+/**
+ * Feature detected in a sample: the mz, retention time and intensity of the most abundant peak, and the peaks grouped
+ * with it. Immutable.
+ */
+public final class Feature {
+
+    private final double mz;
+    private final double rtMin;
+    private final double intensity;
+    private final IonizationMode ionizationMode;
+    private final PeakGroup groupedSignals;
+
+    /**
+     * @param mz
+     * @param retentionTime
+     * @param intensity
+     * @param ionizationMode
+     * @throws IllegalArgumentException if the ionization mode is null
+     */
+    public Feature(double mz, double retentionTime, double intensity, IonizationMode ionizationMode) {
+        this(mz, retentionTime, intensity, ionizationMode, PeakPool.EMPTY.all());
+    }
+
+    /**
+     * @param mz
+     * @param retentionTime
+     * @param intensity
+     * @param ionizationMode
+     * @param groupedSignals peaks grouped with the feature, shared by all its annotations
+     * @throws IllegalArgumentException if the ionization mode is null, the adducts to annotate the feature with
+     *                                  depend on it
+     */
+    public Feature(double mz, double retentionTime, double intensity, IonizationMode ionizationMode, PeakGroup groupedSignals) {
+        if (ionizationMode == null) {
+            throw new IllegalArgumentException("The feature with mz " + mz + " has no ionization mode");
+        }
+        this.mz = mz;
+        this.rtMin = retentionTime;
+        this.intensity = intensity;
+        this.ionizationMode = ionizationMode;
+        this.groupedSignals = groupedSignals;
+    }
+
+    public double getMz() {
+        return mz;
+    }
+
+    public double getRtMin() {
+        return rtMin;
+    }
+
+    public double getIntensity() {
+        return intensity;
+    }
+
+    public IonizationMode getIonizationMode() {
+        return ionizationMode;
+    }
+
+    public PeakGroup getGroupedSignals() {
+        return groupedSignals;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Feature(mz=%.4f, RT=%.2f, intensity=%.1f, %s)", mz, rtMin, intensity, ionizationMode);
+    }
+}
@@ -0,0 +1,205 @@
+package lipid;
+
+import lipid.ElutionOrderScorer.CarbonsAndDoubleBonds;
+import lipid.ElutionOrderScorer.TypeAndCount;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Incremental version of {@link ElutionOrderScorer}. Annotations are added and removed while the chromatogram is
+ * processed, and every {@link #fire()} only scores the pairs that involve the annotations added or removed since the
+ * previous call. The cost of a change is the size of the partitions of the annotation, not the size of the sample.
+ * <p>
+ * Removing an annotation reverts every score that its pairs applied, to its partners and to itself, so the score and
+ * the total scores applied of every annotation are always the ones of a full scoring of the current annotations.
+ * Not thread safe.
+ */
+public class IncrementalElutionScorer {
+
+    private final Map<TypeAndCount, Set<Annotation>> byTypeAndDoubleBonds = new HashMap<>();
+    private final Map<TypeAndCount, Set<Annotation>> byTypeAndCarbons = new HashMap<>();
+    private final Map<CarbonsAndDoubleBonds, Set<Annotation>> byCarbonsAndDoubleBonds = new HashMap<>();
+    private final Set<Annotation> scored = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Queue<PendingChange> pendingChanges = new ArrayDeque<>();
+
+    private static final class PendingChange {
+        private final Annotation annotation;
+        private final boolean added;
+
+        PendingChange(Annotation annotation, boolean added) {
+            this.annotation = annotation;
+            this.added = added;
+        }
+    }
+
+    /**
+     * The annotation is scored with the others in the next {@link #fire()}
+     */
+    public void add(Annotation annotation) {
+        pendingChanges.add(new PendingChange(annotation, true));
+    }
+
+    /**
+     * The scores of the pairs of the annotation are reverted in the next {@link #fire()}
+     */
+    public void remove(Annotation annotation) {
+        pendingChanges.add(new PendingChange(annotation, false));
+    }
+
+    /**
+     * @return number of annotations scored, without the pending changes
+     */
+    public int size() {
+        return scored.size();
+    }
+
+    public boolean hasPendingChanges() {
+        return !pendingChanges.isEmpty();
+    }
+
+    /**
+     * Propagate the pending changes in the order they were made
+     *
+     * @return number of rule firings of the pairs of the added annotations (the pairs reverted are not counted)
+     */
+    public long fire() {
+        long firings = 0;
+        PendingChange change;
+        while ((change = pendingChanges.poll()) != null) {
+            if (change.added) {
+                firings += insert(change.annotation);
+            } else {
+                delete(change.annotation);
+            }
+        }
+        return firings;
+    }
+
+    private int insert(Annotation annotation) {
+        if (Double.isNaN(annotation.getRtMin()) || !scored.add(annotation)) {
+            // NaN RTs never fire, and an annotation already scored must not be paired twice
+            return 0;
+        }
+        Lipid lipid = annotation.getLipid();
+        Set<Annotation> sameTypeAndDoubleBonds = partition(byTypeAndDoubleBonds,
+                new TypeAndCount(lipid.getLipidType(), lipid.getDoubleBondsCount()));
+        Set<Annotation> sameTypeAndCarbons = partition(byTypeAndCarbons,
+                new TypeAndCount(lipid.getLipidType(), lipid.getCarbonCount()));
+        Set<Annotation> sameCarbonsAndDoubleBonds = partition(byCarbonsAndDoubleBonds,
+                new CarbonsAndDoubleBonds(lipid.getCarbonCount(), lipid.getDoubleBondsCount()));
+
+        int firings = applyPairs(annotation, sameTypeAndDoubleBonds, 1);
+        firings += applyPairs(annotation, sameTypeAndCarbons, 1);
+        firings += applyPairs(annotation, sameCarbonsAndDoubleBonds, 1);
+        sameTypeAndDoubleBonds.add(annotation);
+        sameTypeAndCarbons.add(annotation);
+        sameCarbonsAndDoubleBonds.add(annotation);
+        return firings;
+    }
+
+    private void delete(Annotation annotation) {
+        if (!scored.remove(annotation)) {
+            return;
+        }
+        Lipid lipid = annotation.getLipid();
+        Set<Annotation> sameTypeAndDoubleBonds = removeFromPartition(byTypeAndDoubleBonds,
+                new TypeAndCount(lipid.getLipidType(), lipid.getDoubleBondsCount()), annotation);
+        Set<Annotation> sameTypeAndCarbons = removeFromPartition(byTypeAndCarbons,
+                new TypeAndCount(lipid.getLipidType(), lipid.getCarbonCount()), annotation);
+        Set<Annotation> sameCarbonsAndDoubleBonds = removeFromPartition(byCarbonsAndDoubleBonds,
+                new CarbonsAndDoubleBonds(lipid.getCarbonCount(), lipid.getDoubleBondsCount()), annotation);
+        applyPairs(annotation, sameTypeAndDoubleBonds, -1);
+        applyPairs(annotation, sameTypeAndCarbons, -1);
+        applyPairs(annotation, sameCarbonsAndDoubleBonds, -1);
+    }
+
+    private static <K> Set<Annotation> partition(Map<K, Set<Annotation>> partitions, K key) {
+        return partitions.computeIfAbsent(key, k -> Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    /**
+     * Remove the annotation from its partition, and the partition from the map when it is left empty, so a long stream
+     * of changes does not keep a partition for every key ever seen
+     *
+     * @return the rest of the partition
+     */
+    private static <K> Set<Annotation> removeFromPartition(Map<K, Set<Annotation>> partitions, K key,
+                                                           Annotation annotation) {
+        Set<Annotation> partition = partitions.get(key);
+        partition.remove(annotation);
+        if (partition.isEmpty()) {
+            partitions.remove(key);
+        }
+        return partition;
+    }
+
+    /**
+     * @return number of partitions of the three kinds, only the ones with annotations are kept
+     */
+    int getPartitions() {
+        return byTypeAndDoubleBonds.size() + byTypeAndCarbons.size() + byCarbonsAndDoubleBonds.size();
+    }
+
+    /**
+     * Score (direction 1) or revert (direction -1) the pairs of the annotation with the rest of the partition
+     *
+     * @return number of pairs that fire a rule
+     */
+    private static int applyPairs(Annotation annotation, Set<Annotation> partition, int direction) {
+        int delta = 0;
+        int applied = 0;
+        for (Annotation other : partition) {
+            int pairScore = pairScore(annotation, other);
+            if (pairScore != 0) {
+                other.addScore(direction * pairScore, direction);
+                delta += pairScore;
+                applied++;
+            }
+        }
+        if (applied > 0) {
+            annotation.addScore(direction * delta, direction * applied);
+        }
+        return applied;
+    }
+
+    /**
+     * Score that the rules of lipids.drl give to a pair of annotations of the same partition: 1, -1 or 0 if no rule
+     * fires
+     */
+    static int pairScore(Annotation a1, Annotation a2) {
+        int rtOrder = compare(a1.getRtMin(), a2.getRtMin());
+        if (rtOrder == 0) {
+            return 0;
+        }
+        Lipid l1 = a1.getLipid();
+        Lipid l2 = a2.getLipid();
+        boolean sameType = Objects.equals(l1.getLipidType(), l2.getLipidType());
+        if (sameType && l1.getDoubleBondsCount() == l2.getDoubleBondsCount() && l1.getCarbonCount() != l2.getCarbonCount()) {
+            // More carbons, longer RT
+            return Integer.signum(l1.getCarbonCount() - l2.getCarbonCount()) * rtOrder;
+        }
+        if (sameType && l1.getCarbonCount() == l2.getCarbonCount() && l1.getDoubleBondsCount() != l2.getDoubleBondsCount()) {
+            // More double bonds, shorter RT
+            return -Integer.signum(l1.getDoubleBondsCount() - l2.getDoubleBondsCount()) * rtOrder;
+        }
+        if (l1.getCarbonCount() == l2.getCarbonCount() && l1.getDoubleBondsCount() == l2.getDoubleBondsCount()) {
+            // PG < PE < PI < PA < PS < PC
+            return Integer.signum(l1.getLipidTypeRank() - l2.getLipidTypeRank()) * rtOrder;
+        }
+        return 0;
+    }
+
+    /**
+     * @return 1, -1 or 0 like the comparisons of the rules (no order with NaN)
+     */
+    private static int compare(double rt1, double rt2) {
+        return rt1 > rt2 ? 1 : rt1 < rt2 ? -1 : 0;
+    }
+}
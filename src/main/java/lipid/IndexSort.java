@@ -0,0 +1,97 @@
+package lipid;
+
+import java.util.Arrays;
+
+/**
+ * Stable sort of indexes by a double key, on primitive arrays only. The keys are mapped to longs with the order of
+ * {@link Double#compare(double, double)} (-0.0 before 0.0, NaN last) and sorted with a least significant digit radix
+ * sort, one pass per byte that is not the same in every key. Short arrays use an insertion sort.
+ */
+final class IndexSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 64;
+
+    private IndexSort() {
+    }
+
+    /**
+     * @param keys values to sort by. The array is not modified
+     * @return the indexes of keys in ascending key order, equal keys in index order
+     */
+    static int[] order(double[] keys) {
+        int n = keys.length;
+        long[] sortKeys = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortKeys[i] = sortable(keys[i]);
+            order[i] = i;
+        }
+        if (n < INSERTION_SORT_THRESHOLD) {
+            insertionSort(sortKeys, order);
+            return order;
+        }
+        return radixSort(sortKeys, order);
+    }
+
+    /**
+     * @return a long whose unsigned order is the order of Double.compare
+     */
+    static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // Negative values have their magnitude bits flipped, then the sign bit is flipped for the unsigned order
+        return (bits ^ ((bits >> 63) & Long.MAX_VALUE)) ^ Long.MIN_VALUE;
+    }
+
+    private static void insertionSort(long[] keys, int[] order) {
+        for (int i = 1; i < keys.length; i++) {
+            long key = keys[i];
+            int index = order[i];
+            int j = i;
+            while (j > 0 && Long.compareUnsigned(keys[j - 1], key) > 0) {
+                keys[j] = keys[j - 1];
+                order[j] = order[j - 1];
+                j--;
+            }
+            keys[j] = key;
+            order[j] = index;
+        }
+    }
+
+    /**
+     * @return the sorted indexes, order itself or the buffer of the last pass
+     */
+    private static int[] radixSort(long[] keys, int[] order) {
+        int n = keys.length;
+        long[] keyBuffer = new long[n];
+        int[] orderBuffer = new int[n];
+        int[] counts = new int[256];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (long key : keys) {
+                counts[(int) (key >>> shift) & 0xFF]++;
+            }
+            if (counts[(int) (keys[0] >>> shift) & 0xFF] == n) {
+                // Every key has the same byte, the pass would not move anything
+                continue;
+            }
+            int position = 0;
+            for (int b = 0; b < 256; b++) {
+                int count = counts[b];
+                counts[b] = position;
+                position += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int target = counts[(int) (keys[i] >>> shift) & 0xFF]++;
+                keyBuffer[target] = keys[i];
+                orderBuffer[target] = order[i];
+            }
+            long[] swapKeys = keys;
+            keys = keyBuffer;
+            keyBuffer = swapKeys;
+            int[] swapOrder = order;
+            order = orderBuffer;
+            orderBuffer = swapOrder;
+        }
+        return order;
+    }
+}
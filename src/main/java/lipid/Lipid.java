@@ -1,33 +1,63 @@
 package lipid;
 
+import adduct.FormulaParser;
+
 import java.util.Objects;
 
 public class Lipid {
     private final int compoundId;
     private final String name;
     private final String formula;
-    private final String lipidType; // !! OPTIONAL TODO -> TRANSFORM INTO AN ENUMERATION
+    private final String lipidType; // kept as written, TG, SM, etc.. have no LipidClass of their own
     private final int carbonCount;
     private final int doubleBondsCount;
-    private final int lipidTypeRank;
+    private final LipidClass lipidClass;
+    private final double monoisotopicMass; // exact mass of the formula, NaN without a formula that can be parsed
 
 
     /**
      * @param compoundId
      * @param name
-     * @param formula
      * @param lipidType
      * @param carbonCount
      * @param doubleBondCount
+     * @param formula         its exact mass is the monoisotopic mass, NaN if the formula is null, malformed or has an
+     *                        element without mass
      */
     public Lipid(int compoundId, String name, String formula, String lipidType, int carbonCount, int doubleBondCount) {
+        this(compoundId, name, formula, lipidType, carbonCount, doubleBondCount, massOf(formula));
+    }
+
+    /**
+     * @param compoundId
+     * @param name
+     * @param formula
+     * @param lipidType
+     * @param carbonCount
+     * @param doubleBondCount
+     * @param monoisotopicMass neutral mass already known (e.g. from a catalogue), the formula is not parsed
+     */
+    public Lipid(int compoundId, String name, String formula, String lipidType, int carbonCount, int doubleBondCount,
+                 double monoisotopicMass) {
         this.compoundId = compoundId;
         this.name = name;
         this.formula = formula;
         this.lipidType = lipidType;
         this.carbonCount = carbonCount;
         this.doubleBondsCount = doubleBondCount;
-        this.lipidTypeRank = calculateLipidTypeRank(lipidType);
+        this.lipidClass = LipidClass.fromLipidType(lipidType);
+        this.monoisotopicMass = monoisotopicMass;
+    }
+
+    private static double massOf(String formula) {
+        if (formula == null) {
+            return Double.NaN;
+        }
+        try {
+            return FormulaParser.getMonoisotopicMass(formula);
+        } catch (IllegalArgumentException e) {
+            return Double.NaN;
+        }
     }
 
     public int getCompoundId() {
@@ -42,6 +72,10 @@ public class Lipid {
         return formula;
     }
 
+    public double getMonoisotopicMass() {
+        return monoisotopicMass;
+    }
+
     public String getLipidType() {
         return this.lipidType;
     }
@@ -54,20 +88,15 @@ public class Lipid {
         return doubleBondsCount;
     }
 
-    private static int calculateLipidTypeRank(String type) {
-        switch (type) {
-            case "PG": return 1;
-            case "PE": return 2;
-            case "PI": return 3;
-            case "PA": return 4;
-            case "PS": return 5;
-            case "PC": return 6;
-            default: return 100;
-        }
+    public LipidClass getLipidClass() {
+        return lipidClass;
     }
 
+    /**
+     * @return elution rank of the {@link LipidClass} of the lipid type
+     */
     public int getLipidTypeRank() {
-        return lipidTypeRank;
+        return lipidClass.getElutionRank();
     }
 
     @Override
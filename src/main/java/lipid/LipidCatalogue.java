@@ -0,0 +1,267 @@
+package lipid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalogue of lipids stored in a binary file that is memory mapped instead of loaded. Opening a catalogue only maps
+ * the file, the {@link Lipid} objects are created when a lookup returns them and they are interned by compound id, so
+ * every lipid is a single flyweight no matter how many lookups return it.
+ * <p>
+ * The records of the file are sorted by neutral mass and have a fixed size, so they are the mass index themselves: a
+ * lookup is a binary search over the mapped records, O(log n + k) for k candidates.
+ * <p>
+ * File format (big endian): a header (magic, version, number of lipids, offset of the string table), the records
+ * (neutral mass, compound id, offsets of name, formula and lipid type, carbon count, double bond count) and the string
+ * table (unsigned short length plus UTF-8 bytes, each distinct string once). A null string has the offset -1. Thread
+ * safe.
+ */
+public final class LipidCatalogue {
+
+    private static final int MAGIC = 0x4C495043; // "LIPC"
+    private static final int VERSION = 1;
+    private static final int NULL_STRING = -1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+
+    private static final int MASS = 0;
+    private static final int COMPOUND_ID = 8;
+    private static final int NAME = 12;
+    private static final int FORMULA = 16;
+    private static final int LIPID_TYPE = 20;
+    private static final int CARBONS = 24;
+    private static final int DOUBLE_BONDS = 28;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int stringTableOffset;
+    private final Map<Integer, Lipid> lipids = new ConcurrentHashMap<>();
+    // The lipid types repeat in every record, so the decoded strings are shared as well
+    private final Map<Integer, String> lipidTypes = new ConcurrentHashMap<>();
+
+    private LipidCatalogue(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a lipid catalogue file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported lipid catalogue version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.stringTableOffset = buffer.getInt(12);
+        if (size < 0 || HEADER_SIZE + (long) size * RECORD_SIZE != stringTableOffset || stringTableOffset > buffer.capacity()) {
+            throw new IllegalArgumentException("Corrupted lipid catalogue: " + size + " records");
+        }
+    }
+
+    /**
+     * Map a catalogue file written by {@link #write(Path, List, double[])}
+     *
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public static LipidCatalogue open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LipidCatalogue(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the lipid catalogue " + file, e);
+        }
+    }
+
+    /**
+     * Write a catalogue file with the mass of the formula of every lipid
+     *
+     * @param lipids lipids of the catalogue in any order
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public static void write(Path file, List<Lipid> lipids) {
+        double[] neutralMasses = new double[lipids.size()];
+        for (int i = 0; i < neutralMasses.length; i++) {
+            neutralMasses[i] = lipids.get(i).getMonoisotopicMass();
+        }
+        write(file, lipids, neutralMasses);
+    }
+
+    /**
+     * Write a catalogue file
+     *
+     * @param lipids        lipids of the catalogue in any order
+     * @param neutralMasses neutral (monoisotopic) mass of every lipid, in the same order
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public static void write(Path file, List<Lipid> lipids, double[] neutralMasses) {
+        if (lipids.size() != neutralMasses.length) {
+            throw new IllegalArgumentException("Got " + lipids.size() + " lipids but " + neutralMasses.length + " masses");
+        }
+        int[] order = IndexSort.order(neutralMasses);
+
+        StringTable strings = new StringTable();
+        ByteBuffer records = ByteBuffer.allocate(order.length * RECORD_SIZE);
+        for (int index : order) {
+            Lipid lipid = lipids.get(index);
+            records.putDouble(neutralMasses[index])
+                    .putInt(lipid.getCompoundId())
+                    .putInt(strings.offsetOf(lipid.getName()))
+                    .putInt(strings.offsetOf(lipid.getFormula()))
+                    .putInt(strings.offsetOf(lipid.getLipidType()))
+                    .putInt(lipid.getCarbonCount())
+                    .putInt(lipid.getDoubleBondsCount());
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(order.length)
+                .putInt(HEADER_SIZE + records.capacity());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer part : new ByteBuffer[]{header.flip(), records.flip(), strings.toBuffer()}) {
+                while (part.hasRemaining()) {
+                    channel.write(part);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the lipid catalogue " + file, e);
+        }
+    }
+
+    /**
+     * @return number of lipids of the catalogue
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index position of the lipid in neutral mass order
+     */
+    public double getNeutralMass(int index) {
+        return buffer.getDouble(recordOffset(index) + MASS);
+    }
+
+    /**
+     * @param index position of the lipid in neutral mass order
+     * @return the interned lipid
+     */
+    public Lipid getLipid(int index) {
+        int record = recordOffset(index);
+        return lipids.computeIfAbsent(buffer.getInt(record + COMPOUND_ID), compoundId -> new Lipid(compoundId,
+                readString(buffer.getInt(record + NAME)),
+                readString(buffer.getInt(record + FORMULA)),
+                lipidTypes.computeIfAbsent(buffer.getInt(record + LIPID_TYPE), this::readString),
+                buffer.getInt(record + CARBONS),
+                buffer.getInt(record + DOUBLE_BONDS),
+                buffer.getDouble(record + MASS)));
+    }
+
+    /**
+     * @return the lipids with minMass <= neutral mass <= maxMass, in neutral mass order
+     */
+    public List<Lipid> findByMassRange(double minMass, double maxMass) {
+        int from = lowerBound(minMass);
+        List<Lipid> candidates = new ArrayList<>();
+        for (int index = from; index < size && getNeutralMass(index) <= maxMass; index++) {
+            candidates.add(getLipid(index));
+        }
+        return candidates.isEmpty() ? Collections.emptyList() : candidates;
+    }
+
+    /**
+     * @param neutralMass neutral mass of the feature
+     * @param ppm         tolerance in ppm of the neutral mass
+     * @return the lipids within the tolerance, in neutral mass order
+     */
+    public List<Lipid> findByMass(double neutralMass, int ppm) {
+        double tolerance = Math.abs(neutralMass * ppm / 1_000_000d);
+        return findByMassRange(neutralMass - tolerance, neutralMass + tolerance);
+    }
+
+    /**
+     * @return index of the first lipid with neutral mass greater than or equal to mass, size() if there is none
+     */
+    public int lowerBound(double mass) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getNeutralMass(mid) < mass) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return number of lipids created so far
+     */
+    public int getMaterializedLipids() {
+        return lipids.size();
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Lipid " + index + " out of " + size);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private String readString(int offset) {
+        if (offset == NULL_STRING) {
+            return null;
+        }
+        int position = stringTableOffset + offset;
+        int length = Short.toUnsignedInt(buffer.getShort(position));
+        byte[] bytes = new byte[length];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Strings of the catalogue, each distinct string stored once
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> offsets = new HashMap<>();
+        private final List<byte[]> entries = new ArrayList<>();
+        private int size;
+
+        int offsetOf(String string) {
+            if (string == null) {
+                return NULL_STRING;
+            }
+            Integer offset = offsets.get(string);
+            if (offset == null) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 0xFFFF) {
+                    throw new IllegalArgumentException("String too long for the lipid catalogue: " + string);
+                }
+                offset = size;
+                offsets.put(string, offset);
+                entries.add(bytes);
+                size += 2 + bytes.length;
+            }
+            return offset;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (byte[] bytes : entries) {
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            return buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package lipid;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lipid classes with their elution rank in reverse phase: PG < PE < PI < PA < PS < PC. The classes without an elution
+ * rank share the rank of {@link #OTHER}, so the rules never order them against each other.
+ */
+public enum LipidClass {
+    PG(1),
+    PE(2),
+    PI(3),
+    PA(4),
+    PS(5),
+    PC(6),
+    OTHER(100);
+
+    private static final Map<String, LipidClass> BY_TYPE = new HashMap<>();
+
+    static {
+        for (LipidClass lipidClass : values()) {
+            if (lipidClass != OTHER) {
+                BY_TYPE.put(lipidClass.name(), lipidClass);
+            }
+        }
+    }
+
+    private final int elutionRank;
+
+    LipidClass(int elutionRank) {
+        this.elutionRank = elutionRank;
+    }
+
+    /**
+     * @return position of the class in the elution order, lower elutes first
+     */
+    public int getElutionRank() {
+        return elutionRank;
+    }
+
+    /**
+     * @param lipidType lipid type of a {@link Lipid} (PG, PE, TG, etc..)
+     * @return the class of the type, OTHER if it has no elution rank or it is null
+     */
+    public static LipidClass fromLipidType(String lipidType) {
+        return lipidType == null ? OTHER : BY_TYPE.getOrDefault(lipidType, OTHER);
+    }
+}
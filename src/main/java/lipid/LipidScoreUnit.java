@@ -1,10 +1,24 @@
 package lipid;
 
+import org.drools.ruleunits.api.DataHandle;
+import org.drools.ruleunits.api.DataProcessor;
 import org.drools.ruleunits.api.DataSource;
 import org.drools.ruleunits.api.DataStore;
 import org.drools.ruleunits.api.RuleUnitData;
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+import org.drools.ruleunits.api.conf.RuleConfig;
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.rule.FactHandle;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class LipidScoreUnit implements RuleUnitData {
 
@@ -12,6 +26,11 @@ public class LipidScoreUnit implements RuleUnitData {
 
 
     private final DataStore<Annotation> annotations;
+    // No getter on purpose: every getter of a rule unit becomes a unit variable of the DRL
+    private final ScoringEngine scoringEngine;
+    // Annotations of the store, only kept for the native engines. Drools keeps its own working memory
+    private final Map<DataHandle, Annotation> storedAnnotations;
+    private final IncrementalElutionScorer incrementalScorer;
 
     public LipidScoreUnit() {
 
@@ -19,15 +38,183 @@ public class LipidScoreUnit implements RuleUnitData {
     }
 
     public LipidScoreUnit(DataStore<Annotation> annotations) {
-        this.annotations = annotations;
+        this(annotations, ScoringEngine.DROOLS);
+    }
+
+    public LipidScoreUnit(ScoringEngine scoringEngine) {
+        this(DataSource.createStore(), scoringEngine);
+    }
 
+    public LipidScoreUnit(DataStore<Annotation> annotations, ScoringEngine scoringEngine) {
+        this.annotations = annotations;
+        this.scoringEngine = scoringEngine;
+        this.incrementalScorer = scoringEngine == ScoringEngine.INCREMENTAL ? new IncrementalElutionScorer() : null;
+        if (scoringEngine == ScoringEngine.DROOLS) {
+            this.storedAnnotations = null;
+        } else {
+            this.storedAnnotations = new LinkedHashMap<>();
+            annotations.subscribe(new AnnotationCollector());
+        }
     }
 
     public DataStore<Annotation> getAnnotations() {
         return annotations;
     }
 
+    /**
+     * Add the annotations to the store in one batch
+     *
+     * @return the handles of the annotations, in the same order
+     */
+    public List<DataHandle> addAnnotations(Collection<Annotation> annotations) {
+        PipelineEvents.FactInsertion event = new PipelineEvents.FactInsertion();
+        event.begin();
+        List<DataHandle> handles = new ArrayList<>(annotations.size());
+        for (Annotation annotation : annotations) {
+            handles.add(this.annotations.add(annotation));
+        }
+        if (event.shouldCommit()) {
+            event.annotations = handles.size();
+            event.scoringEngine = scoringEngine.name();
+            event.commit();
+        }
+        return handles;
+    }
+
+    /**
+     * Apply the elution order rules to the annotations of the store with the scoring engine of the unit. With
+     * {@link ScoringEngine#DROOLS} a rule unit instance is created, fired and closed, and with
+     * {@link ScoringEngine#SORT_AND_SWEEP} all the annotations are scored. With {@link ScoringEngine#INCREMENTAL} only
+     * the annotations added, updated or removed since the previous call are scored (or reverted), so the store can be
+     * modified and scored again as the chromatogram is processed.
+     *
+     * @return number of rule firings
+     */
+    public long score() {
+        return score(null);
+    }
+
+    /**
+     * Same as {@link #score()}, recording the latency of the call and, with {@link ScoringEngine#DROOLS}, the matches,
+     * firings and consequence time of every rule
+     *
+     * @param statistics where the run is recorded, null to record nothing
+     * @return number of rule firings
+     */
+    public long score(RuleStatistics statistics) {
+        PipelineEvents.RuleFire event = new PipelineEvents.RuleFire();
+        event.begin();
+        long start = statistics == null ? 0 : System.nanoTime();
+        long firings;
+        int annotationCount;
+        if (scoringEngine == ScoringEngine.INCREMENTAL) {
+            annotationCount = storedAnnotations.size();
+            firings = incrementalScorer.fire();
+        } else if (scoringEngine == ScoringEngine.SORT_AND_SWEEP) {
+            annotationCount = storedAnnotations.size();
+            firings = ElutionOrderScorer.score(storedAnnotations.values());
+        } else {
+            // Drools keeps the facts, they are only counted (when the instance inserts them) for a recorded event
+            InsertionCounter insertionCounter = event.isEnabled() ? new InsertionCounter() : null;
+            RuleUnitInstance<LipidScoreUnit> instance;
+            if (statistics == null && insertionCounter == null) {
+                instance = RuleUnitProvider.get().createRuleUnitInstance(this);
+            } else {
+                RuleConfig ruleConfig = RuleUnitProvider.get().newRuleConfig();
+                if (statistics != null) {
+                    addListeners(ruleConfig, statistics);
+                }
+                if (insertionCounter != null) {
+                    ruleConfig.getRuleRuntimeListeners().add(insertionCounter);
+                }
+                instance = RuleUnitProvider.get().createRuleUnitInstance(this, ruleConfig);
+            }
+            try {
+                firings = instance.fire();
+            } finally {
+                instance.close();
+            }
+            annotationCount = insertionCounter == null ? 0 : insertionCounter.insertions;
+        }
+        if (statistics != null) {
+            statistics.fireCompleted(System.nanoTime() - start);
+        }
+        commit(event, annotationCount, firings, scoringEngine);
+        return firings;
+    }
 
+    /**
+     * @return configuration of a rule unit instance that reports to the statistics
+     */
+    static RuleConfig ruleConfig(RuleStatistics statistics) {
+        RuleConfig ruleConfig = RuleUnitProvider.get().newRuleConfig();
+        addListeners(ruleConfig, statistics);
+        return ruleConfig;
+    }
 
+    private static void addListeners(RuleConfig ruleConfig, RuleStatistics statistics) {
+        ruleConfig.getAgendaEventListeners().add(statistics);
+        ruleConfig.getRuleRuntimeListeners().add(statistics);
+    }
 
+    static void commit(PipelineEvents.RuleFire event, int annotations, long firings, ScoringEngine scoringEngine) {
+        if (event.shouldCommit()) {
+            event.annotations = annotations;
+            event.firings = firings;
+            event.scoringEngine = scoringEngine.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * Keeps storedAnnotations (and the pending changes of the incremental scorer) in sync with the data store
+     */
+    private class AnnotationCollector implements DataProcessor<Annotation> {
+
+        @Override
+        public FactHandle insert(DataHandle handle, Annotation annotation) {
+            storedAnnotations.put(handle, annotation);
+            if (incrementalScorer != null) {
+                incrementalScorer.add(annotation);
+            }
+            return null;
+        }
+
+        @Override
+        public void update(DataHandle handle, Annotation annotation) {
+            Annotation previous = storedAnnotations.put(handle, annotation);
+            if (incrementalScorer != null) {
+                // An updated fact is rescored: its previous pairs are reverted and the new ones applied
+                if (previous != null) {
+                    incrementalScorer.remove(previous);
+                }
+                incrementalScorer.add(annotation);
+            }
+        }
+
+        @Override
+        public void delete(DataHandle handle) {
+            Annotation removed = storedAnnotations.remove(handle);
+            if (incrementalScorer != null && removed != null) {
+                incrementalScorer.remove(removed);
+            }
+        }
+    }
+
+    private static final class InsertionCounter implements RuleRuntimeEventListener {
+        private int insertions;
+
+        @Override
+        public void objectInserted(ObjectInsertedEvent event) {
+            insertions++;
+        }
+
+        @Override
+        public void objectUpdated(ObjectUpdatedEvent event) {
+        }
+
+        @Override
+        public void objectDeleted(ObjectDeletedEvent event) {
+        }
+    }
 }
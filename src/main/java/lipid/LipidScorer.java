@@ -0,0 +1,248 @@
+package lipid;
+
+import org.drools.ruleunits.api.DataHandle;
+import org.drools.ruleunits.api.RuleUnit;
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scoring facade for many samples. The rule unit of lipids.drl is the executable model generated by the
+ * kie-maven-plugin at build time, and it is resolved only once. Rule unit instances (one {@link LipidScoreUnit} and
+ * its session each) are kept in a bounded pool: after every sample the annotations are removed from the instance and
+ * the instance is returned to the pool, so the next sample does not pay the session setup.
+ * <p>
+ * Thread safe: up to poolSize samples are scored at the same time, further callers wait until an instance is released
+ * or discarded. {@link ScoringEngine#INCREMENTAL} is not supported, it needs the annotations of one store across fires
+ * (use a {@link LipidScoreUnit}).
+ */
+public class LipidScorer implements AutoCloseable {
+
+    private final ScoringEngine scoringEngine;
+    private final RuleStatistics statistics;
+    private final RuleUnit<LipidScoreUnit> ruleUnit;
+    private final int poolSize;
+    // The idle units, the number of units created and closed are guarded by the lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition unitAvailable = lock.newCondition();
+    private final Deque<PooledUnit> idleUnits = new ArrayDeque<>();
+    private int createdUnits;
+    private volatile boolean closed;
+
+    /**
+     * @param poolSize maximum number of Drools rule unit instances
+     */
+    public LipidScorer(int poolSize) {
+        this(ScoringEngine.DROOLS, poolSize);
+    }
+
+    /**
+     * @param scoringEngine DROOLS or SORT_AND_SWEEP. Only {@link ScoringEngine#DROOLS} uses the pool, sort and sweep
+     *                      scores every sample in one pass
+     * @param poolSize      maximum number of Drools rule unit instances
+     * @throws IllegalArgumentException with {@link ScoringEngine#INCREMENTAL}
+     */
+    public LipidScorer(ScoringEngine scoringEngine, int poolSize) {
+        this(scoringEngine, poolSize, null);
+    }
+
+    /**
+     * @param scoringEngine DROOLS or SORT_AND_SWEEP. Only {@link ScoringEngine#DROOLS} uses the pool, sort and sweep
+     *                      scores every sample in one pass
+     * @param poolSize      maximum number of Drools rule unit instances
+     * @param statistics    where every sample is recorded (shared by all the instances), null to record nothing
+     * @throws IllegalArgumentException with {@link ScoringEngine#INCREMENTAL}
+     */
+    public LipidScorer(ScoringEngine scoringEngine, int poolSize, RuleStatistics statistics) {
+        if (scoringEngine == ScoringEngine.INCREMENTAL) {
+            throw new IllegalArgumentException("The incremental engine scores the changes of one LipidScoreUnit, "
+                    + "it cannot score independent samples");
+        }
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool size must be at least 1, got " + poolSize);
+        }
+        this.scoringEngine = scoringEngine;
+        this.statistics = statistics;
+        this.poolSize = poolSize;
+        this.ruleUnit = scoringEngine == ScoringEngine.DROOLS
+                ? RuleUnitProvider.get().getRuleUnit(new LipidScoreUnit())
+                : null;
+    }
+
+    public ScoringEngine getScoringEngine() {
+        return scoringEngine;
+    }
+
+    /**
+     * Apply the elution order rules to the annotations of one sample
+     *
+     * @param annotations annotations of the sample. Their scores are updated
+     * @return number of rule firings
+     * @throws InterruptedException  if the thread is interrupted while waiting for a free rule unit instance
+     * @throws IllegalStateException if the scorer is closed, also while waiting for an instance
+     */
+    public long score(Collection<Annotation> annotations) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The scorer is closed");
+        }
+        if (scoringEngine == ScoringEngine.SORT_AND_SWEEP) {
+            PipelineEvents.RuleFire event = new PipelineEvents.RuleFire();
+            event.begin();
+            long start = statistics == null ? 0 : System.nanoTime();
+            long firings = ElutionOrderScorer.score(annotations);
+            if (statistics != null) {
+                statistics.fireCompleted(System.nanoTime() - start);
+            }
+            LipidScoreUnit.commit(event, annotations.size(), firings, scoringEngine);
+            return firings;
+        }
+        PooledUnit pooledUnit = borrow();
+        boolean reusable = false;
+        try {
+            long firings = pooledUnit.score(annotations, statistics);
+            reusable = true;
+            return firings;
+        } finally {
+            release(pooledUnit, reusable);
+        }
+    }
+
+    /**
+     * @return number of rule unit instances created so far (never more than the pool size)
+     */
+    public int getCreatedInstances() {
+        lock.lock();
+        try {
+            return createdUnits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PooledUnit borrow() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("The scorer is closed");
+                }
+                PooledUnit pooledUnit = idleUnits.pollFirst();
+                if (pooledUnit != null) {
+                    return pooledUnit;
+                }
+                if (createdUnits < poolSize) {
+                    createdUnits++;
+                    break;
+                }
+                // Signalled when a unit is released or discarded, or when the scorer is closed
+                unitAvailable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // The session is created outside the lock, its slot is already taken
+        try {
+            return new PooledUnit(ruleUnit, statistics);
+        } catch (RuntimeException | Error e) {
+            discarded();
+            throw e;
+        }
+    }
+
+    private void release(PooledUnit pooledUnit, boolean reusable) {
+        lock.lock();
+        try {
+            if (reusable && !closed) {
+                idleUnits.addLast(pooledUnit);
+                unitAvailable.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Failed (or closed) instances are not reused, a new one can be created in their place
+        pooledUnit.close();
+        discarded();
+    }
+
+    private void discarded() {
+        lock.lock();
+        try {
+            createdUnits--;
+            unitAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the idle instances. The instances in use are closed when they are released, and the callers waiting for
+     * one get an IllegalStateException
+     */
+    @Override
+    public void close() {
+        List<PooledUnit> idle;
+        lock.lock();
+        try {
+            closed = true;
+            idle = new ArrayList<>(idleUnits);
+            idleUnits.clear();
+            unitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledUnit pooledUnit : idle) {
+            pooledUnit.close();
+        }
+    }
+
+    /**
+     * One rule unit instance with its data. reset() leaves it as it was created
+     */
+    private static final class PooledUnit {
+        private final LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
+        private final RuleUnitInstance<LipidScoreUnit> instance;
+        private final List<DataHandle> handles = new ArrayList<>();
+
+        PooledUnit(RuleUnit<LipidScoreUnit> ruleUnit, RuleStatistics statistics) {
+            this.instance = statistics == null
+                    ? ruleUnit.createInstance(lipidScoreUnit)
+                    : ruleUnit.createInstance(lipidScoreUnit, LipidScoreUnit.ruleConfig(statistics));
+        }
+
+        long score(Collection<Annotation> annotations, RuleStatistics statistics) {
+            try {
+                handles.addAll(lipidScoreUnit.addAnnotations(annotations));
+                PipelineEvents.RuleFire event = new PipelineEvents.RuleFire();
+                event.begin();
+                long start = statistics == null ? 0 : System.nanoTime();
+                int firings = instance.fire();
+                if (statistics != null) {
+                    statistics.fireCompleted(System.nanoTime() - start);
+                }
+                LipidScoreUnit.commit(event, annotations.size(), firings, ScoringEngine.DROOLS);
+                return firings;
+            } finally {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (DataHandle handle : handles) {
+                lipidScoreUnit.getAnnotations().remove(handle);
+            }
+            handles.clear();
+        }
+
+        void close() {
+            instance.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package lipid;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Peaks of one annotation, as a view of a {@link PeakPool}: either a slice of the pool or a sorted list of pool
+ * indexes. Either way the peaks are in ascending mz order and the mzs are read straight from the arrays of the pool.
+ * Immutable.
+ */
+public final class PeakGroup {
+
+    private final PeakPool pool;
+    private final int from;
+    private final int to;
+    private final int[] indexes; // null for a slice [from, to) of the pool
+
+    PeakGroup(PeakPool pool, int from, int to, int[] indexes) {
+        this.pool = pool;
+        this.from = from;
+        this.to = to;
+        this.indexes = indexes;
+    }
+
+    public PeakPool getPool() {
+        return pool;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    /**
+     * @param position position of the peak in the group, 0 is the lowest mz
+     * @return index of the peak in the pool
+     */
+    public int getPoolIndex(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Peak " + position + " out of " + size());
+        }
+        return poolIndex(position);
+    }
+
+    public double getMz(int position) {
+        return pool.mzAt(getPoolIndex(position));
+    }
+
+    public double getIntensity(int position) {
+        return pool.intensityAt(getPoolIndex(position));
+    }
+
+    private int poolIndex(int position) {
+        return indexes == null ? from + position : indexes[position];
+    }
+
+    /**
+     * @return true if there is a peak p with |expectedMz - p| <= mzTolerance that is not within the tolerance of
+     * excludedMz. Same comparisons as a linear scan over all the peaks of the group
+     */
+    public boolean containsPeak(double expectedMz, double mzTolerance, double excludedMz) {
+        int position = lowerBound(expectedMz - mzTolerance);
+        // expectedMz - mzTolerance is rounded, so the peak just below it may still be within the tolerance
+        while (position > 0 && Math.abs(expectedMz - pool.mzAt(poolIndex(position - 1))) <= mzTolerance) {
+            position--;
+        }
+        int size = size();
+        for (; position < size; position++) {
+            double peakMz = pool.mzAt(poolIndex(position));
+            if (Math.abs(expectedMz - peakMz) <= mzTolerance) {
+                if (Math.abs(peakMz - excludedMz) > mzTolerance) {
+                    return true;
+                }
+            } else if (peakMz > expectedMz) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same peaks as {@link #containsPeak(double, double, double)}, but returns the closest one
+     *
+     * @return position of the peak closest to expectedMz within mzTolerance that is not within the tolerance of
+     * excludedMz, -1 if there is none
+     */
+    public int findPeak(double expectedMz, double mzTolerance, double excludedMz) {
+        int position = lowerBound(expectedMz - mzTolerance);
+        while (position > 0 && Math.abs(expectedMz - pool.mzAt(poolIndex(position - 1))) <= mzTolerance) {
+            position--;
+        }
+        int closest = -1;
+        double closestError = Double.POSITIVE_INFINITY;
+        int size = size();
+        for (; position < size; position++) {
+            double peakMz = pool.mzAt(poolIndex(position));
+            double error = Math.abs(expectedMz - peakMz);
+            if (error <= mzTolerance) {
+                if (Math.abs(peakMz - excludedMz) > mzTolerance && error < closestError) {
+                    closest = position;
+                    closestError = error;
+                }
+            } else if (peakMz > expectedMz) {
+                break;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return position of the first peak with mz greater than or equal to key, size() if there is none
+     */
+    public int lowerBound(double key) {
+        if (indexes == null) {
+            return pool.lowerBound(key, from, to) - from;
+        }
+        int low = 0;
+        int high = indexes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (pool.mzAt(indexes[mid]) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return new Peak objects with the peaks of the group, sorted by mz
+     */
+    public Set<Peak> toPeaks() {
+        Set<Peak> peaks = new TreeSet<>();
+        for (int position = 0; position < size(); position++) {
+            int index = poolIndex(position);
+            peaks.add(new Peak(pool.mzAt(index), pool.intensityAt(index)));
+        }
+        return Collections.unmodifiableSet(peaks);
+    }
+
+    @Override
+    public String toString() {
+        return "PeakGroup(" + size() + " of " + pool + ")";
+    }
+}
@@ -0,0 +1,233 @@
+package lipid;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Groups the co-eluting features of a sample, so their peaks become the grouped signals of the annotations.
+ * <p>
+ * The features are sorted by RT and swept once. A group is opened by the first feature that does not join any open
+ * group, and it stays open while the features are within rtWindow minutes of that first feature. Without intensity
+ * profiles a feature joins the open group, so the grouping costs the O(n log n) of the sort. With profiles (the
+ * intensity of the feature in every scan) a feature joins the open group whose most intense feature has the most
+ * similar profile (cosine similarity of at least minProfileSimilarity), which adds the number of groups open at the
+ * same time to the cost of each feature. Features without RT (NaN) are groups of their own. Thread safe.
+ */
+public class PeakGrouper {
+
+    private final double rtWindow;
+    private final double minProfileSimilarity;
+
+    /**
+     * Group by RT only
+     *
+     * @param rtWindow maximum RT difference in minutes with the first feature of the group
+     */
+    public PeakGrouper(double rtWindow) {
+        this(rtWindow, Double.NaN);
+    }
+
+    /**
+     * @param rtWindow             maximum RT difference in minutes with the first feature of the group
+     * @param minProfileSimilarity minimum cosine similarity of the intensity profiles, NaN to group by RT only
+     */
+    public PeakGrouper(double rtWindow, double minProfileSimilarity) {
+        if (!(rtWindow >= 0)) {
+            throw new IllegalArgumentException("The RT window must be positive, got " + rtWindow);
+        }
+        this.rtWindow = rtWindow;
+        this.minProfileSimilarity = minProfileSimilarity;
+    }
+
+    /**
+     * @param features features of a sample in any order (sorting is cheaper when they are already sorted by RT)
+     * @return the peaks of every group, groups in RT order
+     */
+    public List<Set<Peak>> group(List<Feature> features) {
+        return group(features, null);
+    }
+
+    /**
+     * @param features features of a sample in any order (sorting is cheaper when they are already sorted by RT)
+     * @param profiles intensity profile of every feature, in the same order, or null to group by RT only
+     * @return the peaks of every group, groups in RT order
+     */
+    public List<Set<Peak>> group(List<Feature> features, double[][] profiles) {
+        return peakGroups(features, assignGroups(features, profiles));
+    }
+
+    private static List<Set<Peak>> peakGroups(List<Feature> features, int[] groupOf) {
+        int groups = 0;
+        for (int group : groupOf) {
+            groups = Math.max(groups, group + 1);
+        }
+        List<Set<Peak>> peakGroups = new ArrayList<>(groups);
+        for (int g = 0; g < groups; g++) {
+            peakGroups.add(new TreeSet<>());
+        }
+        for (int i = 0; i < groupOf.length; i++) {
+            Feature feature = features.get(i);
+            peakGroups.get(groupOf[i]).add(new Peak(feature.getMz(), feature.getIntensity()));
+        }
+        for (int g = 0; g < groups; g++) {
+            peakGroups.set(g, Collections.unmodifiableSet(peakGroups.get(g)));
+        }
+        return peakGroups;
+    }
+
+    /**
+     * @param features features of a sample in any order
+     * @param profiles intensity profile of every feature, in the same order, or null to group by RT only
+     * @return the features, in the same order, with the peaks of their group as grouped signals. All the features
+     * share one {@link PeakPool} with a peak per feature, each group is a list of indexes of that pool. Features of a
+     * group with the same mz are one peak of the group, the first of them
+     */
+    public List<Feature> withGroupedSignals(List<Feature> features, double[][] profiles) {
+        int[] groupOf = assignGroups(features, profiles);
+        int n = features.size();
+        double[] mzs = new double[n];
+        double[] intensities = new double[n];
+        for (int i = 0; i < n; i++) {
+            mzs[i] = features.get(i).getMz();
+            intensities[i] = features.get(i).getIntensity();
+        }
+        int[] poolIndexOf = new int[n];
+        PeakPool pool = PeakPool.ofEveryPeak(mzs, intensities, poolIndexOf);
+
+        // Pool indexes of the features of every group, laid out group after group
+        int groups = 0;
+        for (int group : groupOf) {
+            groups = Math.max(groups, group + 1);
+        }
+        int[] groupStart = new int[groups + 1];
+        for (int group : groupOf) {
+            groupStart[group + 1]++;
+        }
+        for (int g = 0; g < groups; g++) {
+            groupStart[g + 1] += groupStart[g];
+        }
+        int[] next = Arrays.copyOf(groupStart, groups);
+        int[] poolIndexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            poolIndexes[next[groupOf[i]]++] = poolIndexOf[i];
+        }
+        PeakGroup[] shared = new PeakGroup[groups];
+        for (int g = 0; g < groups; g++) {
+            shared[g] = pool.group(distinctMzs(pool, poolIndexes, groupStart[g], groupStart[g + 1]));
+        }
+
+        List<Feature> grouped = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Feature feature = features.get(i);
+            grouped.add(new Feature(feature.getMz(), feature.getRtMin(), feature.getIntensity(),
+                    feature.getIonizationMode(), shared[groupOf[i]]));
+        }
+        return grouped;
+    }
+
+    /**
+     * @return the pool indexes of [from, to) sorted, without the peaks whose mz is already in the group. Peaks with the
+     * same mz are in input order in the pool, so the first feature is kept as in the TreeSet of {@link #group(List)}
+     */
+    private static int[] distinctMzs(PeakPool pool, int[] poolIndexes, int from, int to) {
+        Arrays.sort(poolIndexes, from, to);
+        int[] distinct = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int index = poolIndexes[i];
+            if (count == 0 || Double.compare(pool.mzAt(distinct[count - 1]), pool.mzAt(index)) != 0) {
+                distinct[count++] = index;
+            }
+        }
+        return Arrays.copyOf(distinct, count);
+    }
+
+    /**
+     * @return the group of every feature. Groups are numbered in the order they are opened
+     */
+    int[] assignGroups(List<Feature> features, double[][] profiles) {
+        if (profiles != null && profiles.length != features.size()) {
+            throw new IllegalArgumentException("Got " + features.size() + " features but " + profiles.length + " profiles");
+        }
+        int n = features.size();
+        double[] rts = new double[n];
+        for (int i = 0; i < n; i++) {
+            rts[i] = features.get(i).getRtMin();
+        }
+        // Stable sort, NaN last
+        int[] order = IndexSort.order(rts);
+
+        boolean byProfile = profiles != null && !Double.isNaN(minProfileSimilarity);
+        int[] groupOf = new int[n];
+        int groups = 0;
+        Deque<OpenGroup> openGroups = new ArrayDeque<>();
+        for (int index : order) {
+            double rt = rts[index];
+            if (Double.isNaN(rt)) {
+                groupOf[index] = groups++;
+                continue;
+            }
+            // Groups are opened in RT order, so the oldest ones are the first to leave the window
+            while (!openGroups.isEmpty() && rt - openGroups.peekFirst().startRt > rtWindow) {
+                openGroups.pollFirst();
+            }
+            OpenGroup target = null;
+            if (!byProfile) {
+                target = openGroups.peekFirst();
+            } else {
+                double bestSimilarity = minProfileSimilarity;
+                for (Iterator<OpenGroup> it = openGroups.iterator(); it.hasNext(); ) {
+                    OpenGroup open = it.next();
+                    double similarity = cosineSimilarity(profiles[index], profiles[open.apex]);
+                    if (similarity >= bestSimilarity) {
+                        bestSimilarity = similarity;
+                        target = open;
+                    }
+                }
+            }
+            if (target == null) {
+                target = new OpenGroup(groups++, rt, index);
+                openGroups.addLast(target);
+            } else if (features.get(index).getIntensity() > features.get(target.apex).getIntensity()) {
+                target.apex = index;
+            }
+            groupOf[index] = target.id;
+        }
+        return groupOf;
+    }
+
+    /**
+     * @return cosine similarity of the common scans of both profiles, 0 if any of them is empty or all zeros
+     */
+    static double cosineSimilarity(double[] profile1, double[] profile2) {
+        int scans = Math.min(profile1.length, profile2.length);
+        double dot = 0;
+        double norm1 = 0;
+        double norm2 = 0;
+        for (int i = 0; i < scans; i++) {
+            dot += profile1[i] * profile2[i];
+            norm1 += profile1[i] * profile1[i];
+            norm2 += profile2[i] * profile2[i];
+        }
+        return norm1 == 0 || norm2 == 0 ? 0 : dot / Math.sqrt(norm1 * norm2);
+    }
+
+    private static final class OpenGroup {
+        private final int id;
+        private final double startRt;
+        private int apex; // most intense feature of the group
+
+        OpenGroup(int id, double startRt, int apex) {
+            this.id = id;
+            this.startRt = startRt;
+            this.apex = apex;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package lipid;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Peaks of a whole sample sorted by mz and stored in two parallel arrays. Annotations do not copy their peaks: they
+ * keep a {@link PeakGroup} (a slice or a list of indexes of the pool), so the candidate lipids of the same feature
+ * share one copy of the peaks.
+ * <p>
+ * Peaks with the same mz are stored once (the first one is kept), like in a TreeSet of {@link Peak}, except in the
+ * sample pools of the {@link PeakGrouper}, where features of different groups can have the same mz. Immutable.
+ */
+public final class PeakPool {
+
+    public static final PeakPool EMPTY = new PeakPool(new double[0], new double[0], 0);
+
+    private final double[] mzs;
+    private final double[] intensities;
+    private final int size;
+
+    private PeakPool(double[] mzs, double[] intensities, int size) {
+        this.mzs = mzs;
+        this.intensities = intensities;
+        this.size = size;
+    }
+
+    /**
+     * @param peaks peaks in any order
+     */
+    public static PeakPool of(Collection<Peak> peaks) {
+        double[] mzs = new double[peaks.size()];
+        double[] intensities = new double[peaks.size()];
+        int i = 0;
+        for (Peak peak : peaks) {
+            mzs[i] = peak.getMz();
+            intensities[i] = peak.getIntensity();
+            i++;
+        }
+        return of(mzs, intensities);
+    }
+
+    /**
+     * @param mzs         mzs of the peaks in any order. The arrays are not modified
+     * @param intensities intensities of the peaks, in the same order as mzs
+     */
+    public static PeakPool of(double[] mzs, double[] intensities) {
+        if (mzs.length != intensities.length) {
+            throw new IllegalArgumentException("Got " + mzs.length + " mzs but " + intensities.length + " intensities");
+        }
+        if (mzs.length == 0) {
+            return EMPTY;
+        }
+        // Stable sort, so the first peak of the input is the one kept among peaks with the same mz
+        int[] order = IndexSort.order(mzs);
+        double[] sortedMzs = new double[mzs.length];
+        double[] sortedIntensities = new double[mzs.length];
+        int size = 0;
+        for (int index : order) {
+            if (size > 0 && Double.compare(sortedMzs[size - 1], mzs[index]) == 0) {
+                continue;
+            }
+            sortedMzs[size] = mzs[index];
+            sortedIntensities[size] = intensities[index];
+            size++;
+        }
+        return new PeakPool(sortedMzs, sortedIntensities, size);
+    }
+
+    /**
+     * Pool with one peak per input peak, also when mzs are repeated, so groups with the same mz at different RTs keep
+     * their own intensities. Peaks with the same mz are in input order
+     *
+     * @param poolIndexes filled with the index in the pool of every input peak
+     */
+    static PeakPool ofEveryPeak(double[] mzs, double[] intensities, int[] poolIndexes) {
+        int[] order = IndexSort.order(mzs);
+        double[] sortedMzs = new double[mzs.length];
+        double[] sortedIntensities = new double[mzs.length];
+        for (int position = 0; position < order.length; position++) {
+            int index = order[position];
+            sortedMzs[position] = mzs[index];
+            sortedIntensities[position] = intensities[index];
+            poolIndexes[index] = position;
+        }
+        return new PeakPool(sortedMzs, sortedIntensities, mzs.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getMz(int index) {
+        checkIndex(index);
+        return mzs[index];
+    }
+
+    public double getIntensity(int index) {
+        checkIndex(index);
+        return intensities[index];
+    }
+
+    /**
+     * @return a new Peak object with the data of the pool
+     */
+    public Peak getPeak(int index) {
+        checkIndex(index);
+        return new Peak(mzs[index], intensities[index]);
+    }
+
+    /**
+     * @return index of the peak with exactly this mz, or -1 if there is none
+     */
+    public int indexOf(double mz) {
+        int index = lowerBound(mz);
+        return index < size && Double.compare(mzs[index], mz) == 0 ? index : -1;
+    }
+
+    /**
+     * @return index of the first peak with mz greater than or equal to key, size() if there is none
+     */
+    public int lowerBound(double key) {
+        return lowerBound(key, 0, size);
+    }
+
+    int lowerBound(double key, int from, int to) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mzs[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return every peak of the pool
+     */
+    public PeakGroup all() {
+        return slice(0, size);
+    }
+
+    /**
+     * @param from first index, inclusive
+     * @param to   last index, exclusive
+     * @return the peaks of the pool between the two indexes
+     */
+    public PeakGroup slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Slice [" + from + ", " + to + ") out of " + size);
+        }
+        return new PeakGroup(this, from, to, null);
+    }
+
+    /**
+     * @param indexes indexes of the peaks in the pool, in any order. Repeated indexes are ignored
+     * @return the peaks of the pool with those indexes
+     */
+    public PeakGroup group(int... indexes) {
+        int[] sorted = indexes.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int index : sorted) {
+            checkIndex(index);
+            if (count == 0 || sorted[count - 1] != index) {
+                sorted[count++] = index;
+            }
+        }
+        return new PeakGroup(this, 0, count, Arrays.copyOf(sorted, count));
+    }
+
+    /**
+     * @param peaks peaks of the pool (compared by mz)
+     * @return the group with those peaks
+     * @throws IllegalArgumentException if a peak is not in the pool
+     */
+    public PeakGroup group(Collection<Peak> peaks) {
+        int[] indexes = new int[peaks.size()];
+        int i = 0;
+        for (Peak peak : peaks) {
+            int index = indexOf(peak.getMz());
+            if (index < 0) {
+                throw new IllegalArgumentException(peak + " is not in the peak pool");
+            }
+            indexes[i++] = index;
+        }
+        return group(indexes);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Peak " + index + " out of " + size);
+        }
+    }
+
+    // Unchecked accessors for the groups, which validate their indexes once
+    double mzAt(int index) {
+        return mzs[index];
+    }
+
+    double intensityAt(int index) {
+        return intensities[index];
+    }
+
+    @Override
+    public String toString() {
+        return "PeakPool(" + size + " peaks)";
+    }
+}
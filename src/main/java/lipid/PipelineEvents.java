@@ -0,0 +1,93 @@
+package lipid;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of the pipeline stages, so a continuous recording (-XX:StartFlightRecording) shows the
+ * time and size of every stage next to the GC pauses. The events are in the "Lipid Pipeline" category and are enabled
+ * by default, without stack traces, and the per-annotation adduct detection has a 1 ms threshold (all of it
+ * configurable in the .jfc settings).
+ * <p>
+ * The stages create an event, call begin() and only fill and commit it if shouldCommit() is true. Without a recording
+ * that is a flag check, and the JIT removes the allocation of the event.
+ */
+public final class PipelineEvents {
+
+    private static final String CATEGORY = "Lipid Pipeline";
+
+    private PipelineEvents() {
+    }
+
+    @Name("lipid.MassConversion")
+    @Label("Mass Conversion")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Description("Batch transformation between mzs and monoisotopic masses")
+    public static final class MassConversion extends Event {
+        @Label("Values")
+        public int values;
+
+        @Label("Adducts")
+        public int adducts;
+
+        @Label("To Monoisotopic Mass")
+        @Description("True from mzs to masses, false from masses to mzs")
+        public boolean toMonoisotopicMass;
+    }
+
+    @Name("lipid.AdductDetection")
+    @Label("Adduct Detection")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Description("Detection of the adduct of one annotation from its grouped peaks")
+    @Threshold("1 ms")
+    public static final class AdductDetection extends Event {
+        @Label("Mz")
+        public double mz;
+
+        @Label("Peaks")
+        public int peaks;
+
+        @Label("Monoisotopic Peaks")
+        @Description("Peaks left after deisotoping, the same as peaks without deisotoping")
+        public int monoisotopicPeaks;
+
+        @Label("Adduct")
+        public String adduct;
+    }
+
+    @Name("lipid.FactInsertion")
+    @Label("Fact Insertion")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Description("Annotations inserted in the data store of a LipidScoreUnit")
+    public static final class FactInsertion extends Event {
+        @Label("Annotations")
+        public int annotations;
+
+        @Label("Scoring Engine")
+        public String scoringEngine;
+    }
+
+    @Name("lipid.RuleFire")
+    @Label("Rule Fire")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Description("One fire() of the elution order rules over the annotations of a sample")
+    public static final class RuleFire extends Event {
+        @Label("Annotations")
+        public int annotations;
+
+        @Label("Rule Firings")
+        public long firings;
+
+        @Label("Scoring Engine")
+        public String scoringEngine;
+    }
+}
@@ -0,0 +1,370 @@
+package lipid;
+
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the rules of lipids.drl: for every rule the matches created and cancelled, the firings and the time
+ * spent in the consequences, plus the number and latency of the fire() calls and the facts inserted, updated and
+ * deleted. Pass it to {@link LipidScoreUnit#score(RuleStatistics)} or to {@link LipidScorer} and read it with
+ * {@link #snapshot()}.
+ * <p>
+ * The listener only updates counters (LongAdder, so the instances of a {@link LipidScorer} can share it) and a
+ * fixed-size ring buffer with the most recent firings. Nothing is formatted or allocated per event: a rule is looked
+ * up by its name, whose hash code is cached by the String. Reading the ring buffer while rules are firing is best
+ * effort, a slot being written may be read half updated.
+ */
+public class RuleStatistics extends DefaultAgendaEventListener implements RuleRuntimeEventListener {
+
+    public static final int DEFAULT_RECENT_FIRINGS = 1024;
+
+    private final Map<String, RuleCounters> rules = new ConcurrentHashMap<>();
+    // Start of the consequence being fired by each thread
+    private final ThreadLocal<long[]> firingStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final LongAdder fireCalls = new LongAdder();
+    private final LongAdder fireNanos = new LongAdder();
+    private final LongAccumulator maxFireNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder insertedFacts = new LongAdder();
+    private final LongAdder updatedFacts = new LongAdder();
+    private final LongAdder deletedFacts = new LongAdder();
+
+    // Ring buffer of the recent firings, slot = sequence & mask
+    private final RuleCounters[] recentRules;
+    private final long[] recentStartNanos;
+    private final long[] recentDurationNanos;
+    private final AtomicLong recentSequence = new AtomicLong();
+    private final int mask;
+
+    public RuleStatistics() {
+        this(DEFAULT_RECENT_FIRINGS);
+    }
+
+    /**
+     * @param recentFirings firings kept in the ring buffer, rounded up to a power of two
+     */
+    public RuleStatistics(int recentFirings) {
+        if (recentFirings < 1 || recentFirings > 1 << 30) {
+            throw new IllegalArgumentException("The recent firings must be between 1 and 2^30, got " + recentFirings);
+        }
+        int capacity = Integer.highestOneBit(recentFirings);
+        if (capacity < recentFirings) {
+            capacity <<= 1;
+        }
+        this.recentRules = new RuleCounters[capacity];
+        this.recentStartNanos = new long[capacity];
+        this.recentDurationNanos = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private RuleCounters rule(String name) {
+        // get first: computeIfAbsent may lock the bin even when the rule is there
+        RuleCounters counters = rules.get(name);
+        return counters != null ? counters : rules.computeIfAbsent(name, RuleCounters::new);
+    }
+
+    @Override
+    public void matchCreated(MatchCreatedEvent event) {
+        rule(event.getMatch().getRule().getName()).matches.increment();
+    }
+
+    @Override
+    public void matchCancelled(MatchCancelledEvent event) {
+        rule(event.getMatch().getRule().getName()).cancelledMatches.increment();
+    }
+
+    @Override
+    public void beforeMatchFired(BeforeMatchFiredEvent event) {
+        firingStart.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterMatchFired(AfterMatchFiredEvent event) {
+        long end = System.nanoTime();
+        long start = firingStart.get()[0];
+        RuleCounters counters = rule(event.getMatch().getRule().getName());
+        counters.firings.increment();
+        counters.consequenceNanos.add(end - start);
+        int slot = (int) (recentSequence.getAndIncrement() & mask);
+        recentRules[slot] = counters;
+        recentStartNanos[slot] = start;
+        recentDurationNanos[slot] = end - start;
+    }
+
+    @Override
+    public void objectInserted(ObjectInsertedEvent event) {
+        insertedFacts.increment();
+    }
+
+    @Override
+    public void objectUpdated(ObjectUpdatedEvent event) {
+        updatedFacts.increment();
+    }
+
+    @Override
+    public void objectDeleted(ObjectDeletedEvent event) {
+        deletedFacts.increment();
+    }
+
+    /**
+     * Record one fire() call of a rule unit instance (or of a native engine)
+     */
+    void fireCompleted(long nanos) {
+        fireCalls.increment();
+        fireNanos.add(nanos);
+        maxFireNanos.accumulate(nanos);
+    }
+
+    /**
+     * Set all the counters to 0 and empty the ring buffer
+     */
+    public void reset() {
+        rules.clear();
+        fireCalls.reset();
+        fireNanos.reset();
+        maxFireNanos.reset();
+        insertedFacts.reset();
+        updatedFacts.reset();
+        deletedFacts.reset();
+        recentSequence.set(0);
+    }
+
+    /**
+     * @return the statistics so far
+     */
+    public Snapshot snapshot() {
+        Map<String, RuleSnapshot> ruleSnapshots = new TreeMap<>();
+        rules.forEach((name, counters) -> ruleSnapshots.put(name, new RuleSnapshot(name, counters.matches.sum(),
+                counters.cancelledMatches.sum(), counters.firings.sum(), counters.consequenceNanos.sum())));
+        return new Snapshot(ruleSnapshots, fireCalls.sum(), fireNanos.sum(), maxFireNanos.get(), insertedFacts.sum(),
+                updatedFacts.sum(), deletedFacts.sum(), recentFirings());
+    }
+
+    /**
+     * @return the firings of the ring buffer, oldest first
+     */
+    private List<RecentFiring> recentFirings() {
+        long end = recentSequence.get();
+        long start = Math.max(0, end - recentRules.length);
+        List<RecentFiring> firings = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            RuleCounters counters = recentRules[slot];
+            if (counters != null) {
+                firings.add(new RecentFiring(counters.name, recentStartNanos[slot], recentDurationNanos[slot]));
+            }
+        }
+        return Collections.unmodifiableList(firings);
+    }
+
+    private static final class RuleCounters {
+        private final String name;
+        private final LongAdder matches = new LongAdder();
+        private final LongAdder cancelledMatches = new LongAdder();
+        private final LongAdder firings = new LongAdder();
+        private final LongAdder consequenceNanos = new LongAdder();
+
+        RuleCounters(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Counters of one rule
+     */
+    public static final class RuleSnapshot {
+        private final String rule;
+        private final long matches;
+        private final long cancelledMatches;
+        private final long firings;
+        private final long consequenceNanos;
+
+        RuleSnapshot(String rule, long matches, long cancelledMatches, long firings, long consequenceNanos) {
+            this.rule = rule;
+            this.matches = matches;
+            this.cancelledMatches = cancelledMatches;
+            this.firings = firings;
+            this.consequenceNanos = consequenceNanos;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        /**
+         * @return matches put in the agenda. A rule that joins every annotation with every other one has n^2 here
+         */
+        public long getMatches() {
+            return matches;
+        }
+
+        public long getCancelledMatches() {
+            return cancelledMatches;
+        }
+
+        public long getFirings() {
+            return firings;
+        }
+
+        /**
+         * @return time spent in the consequences of the rule, in nanoseconds
+         */
+        public long getConsequenceNanos() {
+            return consequenceNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "RuleSnapshot{" +
+                    "rule='" + rule + '\'' +
+                    ", matches=" + matches +
+                    ", cancelledMatches=" + cancelledMatches +
+                    ", firings=" + firings +
+                    ", consequenceNanos=" + consequenceNanos +
+                    '}';
+        }
+    }
+
+    /**
+     * One of the most recent firings
+     */
+    public static final class RecentFiring {
+        private final String rule;
+        private final long startNanos;
+        private final long durationNanos;
+
+        RecentFiring(String rule, long startNanos, long durationNanos) {
+            this.rule = rule;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} when the consequence started
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+    }
+
+    /**
+     * Statistics at one moment
+     */
+    public static final class Snapshot {
+        private final Map<String, RuleSnapshot> rules;
+        private final long fireCalls;
+        private final long fireNanos;
+        private final long maxFireNanos;
+        private final long insertedFacts;
+        private final long updatedFacts;
+        private final long deletedFacts;
+        private final List<RecentFiring> recentFirings;
+
+        Snapshot(Map<String, RuleSnapshot> rules, long fireCalls, long fireNanos, long maxFireNanos, long insertedFacts,
+                 long updatedFacts, long deletedFacts, List<RecentFiring> recentFirings) {
+            this.rules = Collections.unmodifiableMap(rules);
+            this.fireCalls = fireCalls;
+            this.fireNanos = fireNanos;
+            this.maxFireNanos = maxFireNanos;
+            this.insertedFacts = insertedFacts;
+            this.updatedFacts = updatedFacts;
+            this.deletedFacts = deletedFacts;
+            this.recentFirings = recentFirings;
+        }
+
+        /**
+         * @return the counters of every rule that has been matched, by rule name
+         */
+        public Map<String, RuleSnapshot> getRules() {
+            return rules;
+        }
+
+        /**
+         * @return the counters of the rule, all 0 if it has never been matched
+         */
+        public RuleSnapshot getRule(String rule) {
+            RuleSnapshot snapshot = rules.get(rule);
+            return snapshot != null ? snapshot : new RuleSnapshot(rule, 0, 0, 0, 0);
+        }
+
+        public long getFirings() {
+            long firings = 0;
+            for (RuleSnapshot rule : rules.values()) {
+                firings += rule.getFirings();
+            }
+            return firings;
+        }
+
+        public long getFireCalls() {
+            return fireCalls;
+        }
+
+        /**
+         * @return total time of the fire() calls, in nanoseconds
+         */
+        public long getFireNanos() {
+            return fireNanos;
+        }
+
+        public long getMaxFireNanos() {
+            return maxFireNanos;
+        }
+
+        public long getInsertedFacts() {
+            return insertedFacts;
+        }
+
+        public long getUpdatedFacts() {
+            return updatedFacts;
+        }
+
+        public long getDeletedFacts() {
+            return deletedFacts;
+        }
+
+        /**
+         * @return the most recent firings, oldest first
+         */
+        public List<RecentFiring> getRecentFirings() {
+            return recentFirings;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "rules=" + rules.values() +
+                    ", fireCalls=" + fireCalls +
+                    ", fireNanos=" + fireNanos +
+                    ", maxFireNanos=" + maxFireNanos +
+                    ", insertedFacts=" + insertedFacts +
+                    ", updatedFacts=" + updatedFacts +
+                    ", deletedFacts=" + deletedFacts +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package lipid;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Adduct detection of all the annotations of a sample at once. The result of every annotation is the same as
+ * {@link Annotation#detectAdductFromSignals(IonizationMode, double)} (or the overload with a {@link Deisotoper}), and
+ * it is set with {@link Annotation#setAdduct(String)}.
+ * <ul>
+ *     <li>The candidate lipids of one feature share its mz and its peak group, so their adduct hypotheses are
+ *     evaluated once: the result is cached per (peak group, mz, ionization mode) and reused by the rest.</li>
+ *     <li>The peaks of all the groups are merged into one sorted mz index (a {@link PeakPool} of the sample) and every
+ *     group is looked up as a list of indexes of it, so the binary searches of all the annotations run over one
+ *     array. If the groups are already views of one pool (e.g. from {@link PeakGrouper}), that pool is the index.</li>
+ *     <li>Deisotoping and the hypotheses run in parallel, in chunks of distinct peak groups and of distinct
+ *     evaluations.</li>
+ * </ul>
+ * Thread safe, every call has its own cache.
+ */
+public class SampleAdductDetector {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final double mzTolerance;
+    private final Deisotoper deisotoper;
+    private final ForkJoinPool forkJoinPool;
+    private final int chunkSize;
+
+    /**
+     * Detect without deisotoping, on the common fork-join pool
+     *
+     * @param mzTolerance absolute tolerance in Da
+     */
+    public SampleAdductDetector(double mzTolerance) {
+        this(mzTolerance, null, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param mzTolerance  absolute tolerance in Da
+     * @param deisotoper   deisotoper of the grouped peaks, null to use them as they are
+     * @param forkJoinPool pool that runs the chunks
+     * @param chunkSize    peak groups or evaluations of each task
+     */
+    public SampleAdductDetector(double mzTolerance, Deisotoper deisotoper, ForkJoinPool forkJoinPool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1, got " + chunkSize);
+        }
+        this.mzTolerance = mzTolerance;
+        this.deisotoper = deisotoper;
+        this.forkJoinPool = forkJoinPool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Detect and set the adduct of every annotation
+     *
+     * @param annotations annotations of one sample
+     * @return number of distinct evaluations, the other annotations reused one of them
+     */
+    public int detect(List<Annotation> annotations) {
+        // Distinct peak groups (by identity) and distinct evaluations
+        Map<PeakGroup, Integer> groupIds = new IdentityHashMap<>();
+        List<PeakGroup> groups = new ArrayList<>();
+        Map<Evaluation, Evaluation> distinct = new HashMap<>();
+        List<Evaluation> evaluations = new ArrayList<>();
+        Evaluation[] evaluationOf = new Evaluation[annotations.size()];
+        for (int i = 0; i < evaluationOf.length; i++) {
+            Annotation annotation = annotations.get(i);
+            Integer groupId = groupIds.get(annotation.getPeakGroup());
+            if (groupId == null) {
+                groupId = groups.size();
+                groupIds.put(annotation.getPeakGroup(), groupId);
+                groups.add(annotation.getPeakGroup());
+            }
+            Evaluation evaluation = new Evaluation(groupId, annotation.getMz(), annotation.getIonizationMode());
+            Evaluation existing = distinct.putIfAbsent(evaluation, evaluation);
+            if (existing == null) {
+                evaluations.add(evaluation);
+            } else {
+                evaluation = existing;
+            }
+            evaluationOf[i] = evaluation;
+        }
+
+        PeakGroup[] signals = groups.toArray(new PeakGroup[0]);
+        if (deisotoper != null) {
+            forEachChunk(signals.length, g -> signals[g] = deisotoper.deisotope(signals[g]));
+        }
+        indexInOnePool(signals);
+
+        forEachChunk(evaluations.size(), e -> {
+            Evaluation evaluation = evaluations.get(e);
+            evaluation.adduct = Annotation.detectAdduct(evaluation.mz, evaluation.ionizationMode, mzTolerance,
+                    signals[evaluation.groupId]);
+        });
+        for (int i = 0; i < evaluationOf.length; i++) {
+            annotations.get(i).setAdduct(evaluationOf[i].adduct);
+        }
+        return evaluations.size();
+    }
+
+    /**
+     * Replace the groups by groups of one pool with all their peaks, unless they already share one
+     */
+    private static void indexInOnePool(PeakGroup[] groups) {
+        if (groups.length == 0) {
+            return;
+        }
+        PeakPool shared = groups[0].getPool();
+        boolean onePool = true;
+        int totalPeaks = 0;
+        for (PeakGroup group : groups) {
+            onePool &= group.getPool() == shared;
+            totalPeaks += group.size();
+        }
+        if (onePool) {
+            return;
+        }
+        double[] mzs = new double[totalPeaks];
+        double[] intensities = new double[totalPeaks];
+        int peak = 0;
+        for (PeakGroup group : groups) {
+            for (int position = 0; position < group.size(); position++) {
+                mzs[peak] = group.getMz(position);
+                intensities[peak++] = group.getIntensity(position);
+            }
+        }
+        // Only the mzs are compared by the detection, so merging the peaks of different groups with the same mz
+        // (keeping one intensity) does not change any result
+        PeakPool sample = PeakPool.of(mzs, intensities);
+        for (int g = 0; g < groups.length; g++) {
+            int[] indexes = new int[groups[g].size()];
+            for (int position = 0; position < indexes.length; position++) {
+                indexes[position] = sample.indexOf(groups[g].getMz(position));
+            }
+            groups[g] = sample.group(indexes);
+        }
+    }
+
+    private void forEachChunk(int size, IntConsumer action) {
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        if (chunks <= 1) {
+            for (int i = 0; i < size; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+        forkJoinPool.invoke(new Chunks(size, action, 0, chunks));
+    }
+
+    /**
+     * Runs the chunks [fromChunk, toChunk), splitting them in halves until there is only one
+     */
+    private final class Chunks extends RecursiveAction {
+        private final int size;
+        private final IntConsumer action;
+        private final int fromChunk;
+        private final int toChunk;
+
+        Chunks(int size, IntConsumer action, int fromChunk, int toChunk) {
+            this.size = size;
+            this.action = action;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new Chunks(size, action, fromChunk, middle), new Chunks(size, action, middle, toChunk));
+                return;
+            }
+            if (fromChunk == toChunk) {
+                return;
+            }
+            int from = fromChunk * chunkSize;
+            int to = Math.min(from + chunkSize, size);
+            for (int i = from; i < to; i++) {
+                action.accept(i);
+            }
+        }
+    }
+
+    /**
+     * Adduct detection of one mz against one peak group. The adduct is written by the task that evaluates it and read
+     * after the fork-join pool has joined all the tasks
+     */
+    private static final class Evaluation {
+        private final int groupId;
+        private final double mz;
+        private final IonizationMode ionizationMode;
+        private String adduct;
+
+        Evaluation(int groupId, double mz, IonizationMode ionizationMode) {
+            this.groupId = groupId;
+            this.mz = mz;
+            this.ionizationMode = ionizationMode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Evaluation)) return false;
+            Evaluation that = (Evaluation) o;
+            return groupId == that.groupId && Double.compare(mz, that.mz) == 0 && ionizationMode == that.ionizationMode;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * groupId + Double.hashCode(mz)) + Objects.hashCode(ionizationMode);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package lipid;
+
+/**
+ * Engines that can apply the elution order rules of lipids.drl to the annotations of a {@link LipidScoreUnit}
+ */
+public enum ScoringEngine {
+    /**
+     * The rules of lipids.drl fired by Drools. Every rule is a join of all the annotations with all the annotations
+     */
+    DROOLS,
+    /**
+     * {@link ElutionOrderScorer}: same score effects as the rules, computed with a sort and sweep per partition
+     */
+    SORT_AND_SWEEP,
+    /**
+     * {@link IncrementalElutionScorer}: same score effects as the rules, but every fire only scores the pairs of the
+     * annotations added or removed since the previous one, and removals revert their scores
+     */
+    INCREMENTAL
+}
@@ -0,0 +1,191 @@
+package lipid;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Seeded generator of realistic annotations for scale and load tests. The same seed always gives the same data.
+ * <ul>
+ *     <li>Lipids of the classes PG, PE, PI, PA, PS, PC (diacyl, 28 to 44 chain carbons, 0 to 8 double bonds) and
+ *     TG (44 to 60 carbons, 0 to 12 double bonds), with their formula.</li>
+ *     <li>RTs that follow the elution order of lipids.drl: longer with more carbons, shorter with more double bonds and
+ *     PG &lt; PE &lt; PI &lt; PA &lt; PS &lt; PC &lt; TG. Gaussian noise (in minutes) breaks the order on purpose.</li>
+ *     <li>Grouped peaks with 2 or 3 adducts of {@link AdductList} for the ionization mode, each one with its 13C
+ *     isotope. The annotation is the most intense adduct and its adduct is set.</li>
+ * </ul>
+ * Annotations are generated one by one, so millions can be streamed with {@link #generate(long, Consumer)} without
+ * keeping them. Not thread safe, use one generator per thread.
+ */
+public class SyntheticDatasetGenerator {
+
+    private static final String[] LIPID_TYPES = {"PG", "PE", "PI", "PA", "PS", "PC", "TG"};
+    // Elemental composition of every class besides the chains: C, H, N, O, P. H is for a saturated lipid
+    private static final int[][] HEAD_GROUPS = {
+            {6, 11, 0, 10, 1}, // PG
+            {5, 10, 1, 8, 1},  // PE
+            {9, 15, 0, 13, 1}, // PI
+            {3, 5, 0, 8, 1},   // PA
+            {6, 10, 1, 10, 1}, // PS
+            {8, 16, 1, 8, 1},  // PC
+            {3, 2, 0, 6, 0}};  // TG
+
+    private static final double ISOTOPE_SPACING = 1.00336;
+
+    // Minutes per carbon, per double bond and per position in the class order
+    private static final double RT_PER_CARBON = 0.30;
+    private static final double RT_PER_DOUBLE_BOND = 0.55;
+    private static final double RT_PER_CLASS = 0.12;
+
+    private final Random random;
+    private final double rtNoise;
+    private final IonizationMode ionizationMode;
+    private final List<AdductDescriptor> adducts;
+    private int nextCompoundId = 1;
+
+    /**
+     * Positive mode without RT noise
+     */
+    public SyntheticDatasetGenerator(long seed) {
+        this(seed, 0, IonizationMode.POSITIVE);
+    }
+
+    /**
+     * @param seed           seed of all the random values
+     * @param rtNoise        standard deviation in minutes of the noise added to the RTs
+     * @param ionizationMode mode of the adducts of the peaks
+     */
+    public SyntheticDatasetGenerator(long seed, double rtNoise, IonizationMode ionizationMode) {
+        this.random = new Random(seed);
+        this.rtNoise = rtNoise;
+        this.ionizationMode = ionizationMode;
+        this.adducts = AdductList.getDescriptors(ionizationMode);
+    }
+
+    /**
+     * @return a new lipid with the next compound id
+     */
+    public Lipid nextLipid() {
+        int type = random.nextInt(LIPID_TYPES.length);
+        boolean triacylglycerol = type == LIPID_TYPES.length - 1;
+        int carbons = triacylglycerol ? 44 + 2 * random.nextInt(9) : 28 + 2 * random.nextInt(9);
+        if (random.nextInt(10) == 0) {
+            // Odd chains are less common
+            carbons++;
+        }
+        int doubleBonds = random.nextInt(triacylglycerol ? 13 : 9);
+        String lipidType = LIPID_TYPES[type];
+        return new Lipid(nextCompoundId++, lipidType + " " + carbons + ":" + doubleBonds,
+                formula(type, carbons, doubleBonds), lipidType, carbons, doubleBonds);
+    }
+
+    /**
+     * @return RT of the elution order model plus the noise
+     */
+    public double retentionTime(Lipid lipid) {
+        double rt = 1.0 + RT_PER_CARBON * lipid.getCarbonCount() - RT_PER_DOUBLE_BOND * lipid.getDoubleBondsCount()
+                + RT_PER_CLASS * typeIndex(lipid.getLipidType());
+        if (rtNoise > 0) {
+            rt += random.nextGaussian() * rtNoise;
+        }
+        return Math.max(0, Math.round(rt * 1000) / 1000d);
+    }
+
+    /**
+     * @return an annotation of a new lipid with its grouped peaks and adduct
+     */
+    public Annotation nextAnnotation() {
+        Lipid lipid = nextLipid();
+        double mass = lipid.getMonoisotopicMass();
+        int adductCount = 2 + random.nextInt(2);
+        double[] mzs = new double[adductCount * 2];
+        double[] intensities = new double[adductCount * 2];
+        AdductDescriptor mostIntense = null;
+        double annotationMz = 0;
+        double annotationIntensity = 0;
+        // The adducts of the group, without repetitions. Some adducts give the same mz (e.g. [M-H]− and [M-2H]2−),
+        // only the first of them is kept
+        List<AdductDescriptor> candidates = new ArrayList<>(adducts);
+        for (int i = 0; i < adductCount; i++) {
+            AdductDescriptor adduct = candidates.remove(random.nextInt(candidates.size()));
+            double mz = adduct.toMZ(mass);
+            if (containsMz(mzs, 2 * i, mz)) {
+                i--;
+                continue;
+            }
+            // Log-normal intensities around 1e5
+            double intensity = Math.round(Math.exp(11.5 + random.nextGaussian()));
+            mzs[2 * i] = mz;
+            intensities[2 * i] = intensity;
+            // The 13C isotope, about 1.1% of the monoisotopic intensity per carbon
+            mzs[2 * i + 1] = mz + ISOTOPE_SPACING / adduct.getCharge();
+            intensities[2 * i + 1] = Math.round(intensity * Math.min(0.9, 0.011 * lipid.getCarbonCount()));
+            if (intensity > annotationIntensity) {
+                mostIntense = adduct;
+                annotationMz = mz;
+                annotationIntensity = intensity;
+            }
+        }
+        Annotation annotation = new Annotation(lipid, annotationMz, annotationIntensity, retentionTime(lipid),
+                ionizationMode, PeakPool.of(mzs, intensities).all());
+        annotation.setAdduct(mostIntense.getName());
+        return annotation;
+    }
+
+    /**
+     * Stream annotations without keeping them
+     *
+     * @param count     number of annotations
+     * @param collector receives every annotation
+     */
+    public void generate(long count, Consumer<Annotation> collector) {
+        for (long i = 0; i < count; i++) {
+            collector.accept(nextAnnotation());
+        }
+    }
+
+    /**
+     * @return count new annotations
+     */
+    public List<Annotation> annotations(int count) {
+        List<Annotation> annotations = new ArrayList<>(count);
+        generate(count, annotations::add);
+        return annotations;
+    }
+
+    private static boolean containsMz(double[] mzs, int count, double mz) {
+        for (int i = 0; i < count; i++) {
+            if (Math.abs(mzs[i] - mz) < 1e-6) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int typeIndex(String lipidType) {
+        for (int i = 0; i < LIPID_TYPES.length; i++) {
+            if (LIPID_TYPES[i].equals(lipidType)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a generated lipid class: " + lipidType);
+    }
+
+    private static String formula(int type, int carbons, int doubleBonds) {
+        int[] headGroup = HEAD_GROUPS[type];
+        StringBuilder formula = new StringBuilder();
+        formula.append('C').append(headGroup[0] + carbons).append('H').append(headGroup[1] + 2 * carbons - 2 * doubleBonds);
+        if (headGroup[2] > 0) {
+            formula.append('N');
+        }
+        formula.append('O').append(headGroup[3]);
+        if (headGroup[4] > 0) {
+            formula.append('P');
+        }
+        return formula.toString();
+    }
+}
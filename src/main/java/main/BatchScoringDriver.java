@@ -0,0 +1,237 @@
+package main;
+
+import lipid.Annotation;
+import lipid.LipidScorer;
+import lipid.ScoringEngine;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scores many samples concurrently. Every sample is scored on its own virtual thread, in its own
+ * {@link lipid.LipidScoreUnit} instance (taken from the pool of a {@link LipidScorer}), and at most parallelism
+ * samples are scored at the same time.
+ * <p>
+ * A sample that takes longer than the timeout is reported as {@link Status#TIMED_OUT} and its scores must be
+ * discarded. Rule firing cannot be interrupted, so the sample keeps its slot until the scoring really ends.
+ */
+public class BatchScoringDriver implements AutoCloseable {
+
+    public enum Status {
+        COMPLETED, TIMED_OUT, FAILED
+    }
+
+    private final LipidScorer lipidScorer;
+    private final Semaphore permits;
+    private final long timeoutNanos;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Drools scoring, one sample per available processor and no timeout
+     */
+    public BatchScoringDriver() {
+        this(ScoringEngine.DROOLS, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * @param scoringEngine engine used to score every sample
+     * @param parallelism   maximum number of samples scored at the same time
+     * @param sampleTimeout maximum scoring time of each sample, null for no timeout
+     */
+    public BatchScoringDriver(ScoringEngine scoringEngine, int parallelism, Duration sampleTimeout) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1, got " + parallelism);
+        }
+        this.lipidScorer = new LipidScorer(scoringEngine, parallelism);
+        this.permits = new Semaphore(parallelism);
+        this.timeoutNanos = sampleTimeout == null ? Long.MAX_VALUE : sampleTimeout.toNanos();
+    }
+
+    /**
+     * Score all the samples and wait for them
+     *
+     * @param samples annotations of every sample by sample id. The results keep the iteration order
+     * @return the result of every sample
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public BatchResult score(Map<String, ? extends Collection<Annotation>> samples) throws InterruptedException {
+        long start = System.nanoTime();
+        Map<String, Future<SampleResult>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, ? extends Collection<Annotation>> sample : samples.entrySet()) {
+            futures.put(sample.getKey(), executor.submit(() -> scoreSample(sample.getKey(), sample.getValue())));
+        }
+        List<SampleResult> results = new ArrayList<>(futures.size());
+        for (Map.Entry<String, Future<SampleResult>> future : futures.entrySet()) {
+            try {
+                results.add(future.getValue().get());
+            } catch (ExecutionException e) {
+                results.add(new SampleResult(future.getKey(), Status.FAILED, 0, 0, e.getCause()));
+            }
+        }
+        return new BatchResult(results, System.nanoTime() - start);
+    }
+
+    private SampleResult scoreSample(String sampleId, Collection<Annotation> annotations) throws InterruptedException {
+        permits.acquire();
+        long start = System.nanoTime();
+        // Whoever sets started (the scoring or the timeout) releases the permit
+        AtomicBoolean started = new AtomicBoolean();
+        Future<Long> scoring = executor.submit(() -> {
+            if (!started.compareAndSet(false, true)) {
+                return 0L;
+            }
+            try {
+                return lipidScorer.score(annotations);
+            } finally {
+                permits.release();
+            }
+        });
+        try {
+            long firings = scoring.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            return new SampleResult(sampleId, Status.COMPLETED, firings, System.nanoTime() - start, null);
+        } catch (TimeoutException e) {
+            scoring.cancel(true);
+            if (started.compareAndSet(false, true)) {
+                permits.release();
+            }
+            return new SampleResult(sampleId, Status.TIMED_OUT, 0, System.nanoTime() - start, null);
+        } catch (ExecutionException e) {
+            return new SampleResult(sampleId, Status.FAILED, 0, System.nanoTime() - start, e.getCause());
+        }
+    }
+
+    /**
+     * Stop the scoring and wait for the rule firings still running (those of the timed out samples), so no annotation
+     * is scored after close returns
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        // Waits for the termination of the executor
+        executor.close();
+        lipidScorer.close();
+    }
+
+    /**
+     * Result of the scoring of one sample
+     */
+    public static final class SampleResult {
+        private final String sampleId;
+        private final Status status;
+        private final long firings;
+        private final long elapsedNanos;
+        private final Throwable error;
+
+        SampleResult(String sampleId, Status status, long firings, long elapsedNanos, Throwable error) {
+            this.sampleId = sampleId;
+            this.status = status;
+            this.firings = firings;
+            this.elapsedNanos = elapsedNanos;
+            this.error = error;
+        }
+
+        public String getSampleId() {
+            return sampleId;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return number of rule firings, 0 if the sample has not been completed
+         */
+        public long getFirings() {
+            return firings;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the cause of a {@link Status#FAILED} sample, null otherwise
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "SampleResult{" +
+                    "sampleId='" + sampleId + '\'' +
+                    ", status=" + status +
+                    ", firings=" + firings +
+                    ", elapsedMs=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) +
+                    (error == null ? "" : ", error=" + error) +
+                    '}';
+        }
+    }
+
+    /**
+     * Aggregated results of a batch
+     */
+    public static final class BatchResult {
+        private final List<SampleResult> sampleResults;
+        private final long elapsedNanos;
+
+        BatchResult(List<SampleResult> sampleResults, long elapsedNanos) {
+            this.sampleResults = Collections.unmodifiableList(sampleResults);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the result of every sample, in the order of the samples
+         */
+        public List<SampleResult> getSampleResults() {
+            return sampleResults;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public int count(Status status) {
+            int count = 0;
+            for (SampleResult result : sampleResults) {
+                if (result.getStatus() == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public long getTotalFirings() {
+            long firings = 0;
+            for (SampleResult result : sampleResults) {
+                firings += result.getFirings();
+            }
+            return firings;
+        }
+
+        @Override
+        public String toString() {
+            return "BatchResult{" +
+                    "samples=" + sampleResults.size() +
+                    ", completed=" + count(Status.COMPLETED) +
+                    ", timedOut=" + count(Status.TIMED_OUT) +
+                    ", failed=" + count(Status.FAILED) +
+                    ", totalFirings=" + getTotalFirings() +
+                    ", elapsedMs=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) +
+                    '}';
+        }
+    }
+}
@@ -1,26 +1,22 @@
 package main;
 
-import lipid.LipidScoreUnit;
-import org.drools.ruleunits.api.RuleUnitInstance;
-import org.drools.ruleunits.api.RuleUnitProvider;
+import lipid.Annotation;
+import lipid.LipidScorer;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class Main {
 
-    public static void main(String[] args) {
-        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
-
-        RuleUnitInstance<LipidScoreUnit> instance = RuleUnitProvider.get().createRuleUnitInstance(lipidScoreUnit);
-
-        try {
+    public static void main(String[] args) throws InterruptedException {
+        // The rule unit is resolved once and its instances are reused for every sample scored with the scorer
+        try (LipidScorer lipidScorer = new LipidScorer(1)) {
             // TODO INTRODUCE THE CODE IF DESIRED TO INSERT FACTS AND TRIGGER RULES
-            instance.fire();
+            List<Annotation> annotations = new ArrayList<>();
+            lipidScorer.score(annotations);
             // TODO INTRODUCE THE QUERIES IF DESIRED
 
 
-        } finally {
-            instance.close();
         }
     }
 }
@@ -0,0 +1,141 @@
+package adduct;
+
+import lipid.IonizationMode;
+import lipid.PeakGroup;
+import lipid.PeakPool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdductMatcherTest {
+
+    /**
+     * Previous detection: every adduct, every peak and every adduct again, in AdductList order
+     */
+    private static String detectWithLinearScan(double mz, double[] peakMzs, IonizationMode ionizationMode, double mzTolerance) {
+        Map<String, Double> adducts = ionizationMode == IonizationMode.POSITIVE
+                ? AdductList.MAPMZPOSITIVEADDUCTS : AdductList.MAPMZNEGATIVEADDUCTS;
+        for (String adductAnnotation : adducts.keySet()) {
+            double monoisotopicMass = Adduct.getMonoisotopicMassFromMZ(mz, adductAnnotation);
+            for (double peakMz : peakMzs) {
+                if (Math.abs(peakMz - mz) <= mzTolerance) {
+                    continue;
+                }
+                for (String adductPeak : adducts.keySet()) {
+                    if (Math.abs(Adduct.getMZFromMonoisotopicMass(monoisotopicMass, adductPeak) - peakMz) <= mzTolerance) {
+                        return adductAnnotation;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void shouldDetectTheSameAdductAsTheLinearScan() {
+        Random random = new Random(42);
+        double[] tolerances = {0.005, 0.2, 2d, 10d};
+        for (int iteration = 0; iteration < 5000; iteration++) {
+            IonizationMode ionizationMode = random.nextBoolean() ? IonizationMode.POSITIVE : IonizationMode.NEGATIVE;
+            AdductMatcher matcher = AdductMatcher.forMode(ionizationMode);
+            double mzTolerance = tolerances[random.nextInt(tolerances.length)];
+            double mz = 300 + random.nextDouble() * 1200;
+            double[] peakMzs = new double[1 + random.nextInt(25)];
+            for (int i = 0; i < peakMzs.length; i++) {
+                if (random.nextInt(3) == 0) {
+                    // A real partner of the annotation, sometimes exactly at the tolerance
+                    double expected = matcher.expectedMZ(mz, random.nextInt(matcher.size()), random.nextInt(matcher.size()));
+                    peakMzs[i] = expected + (random.nextInt(3) - 1) * mzTolerance;
+                } else {
+                    peakMzs[i] = 150 + random.nextDouble() * 2700;
+                }
+            }
+            peakMzs[0] = mz;
+            PeakGroup peaks = PeakPool.of(peakMzs, new double[peakMzs.length]).all();
+
+            int detected = matcher.findFirstSupportedAdduct(mz, peaks, mzTolerance);
+            String expected = detectWithLinearScan(mz, peakMzs, ionizationMode, mzTolerance);
+            assertEquals(expected, detected < 0 ? null : matcher.getAdduct(detected).getName());
+        }
+    }
+
+    /**
+     * Every hypothesis evaluated against every adduct, without bounds, sorted at the end
+     */
+    private static List<AdductHypothesis> rankExhaustively(AdductMatcher matcher, double mz, PeakGroup peaks,
+                                                           double mzTolerance) {
+        List<AdductHypothesis> hypotheses = new ArrayList<>();
+        for (int a = 0; a < matcher.size(); a++) {
+            Map<Integer, Double> ppmErrors = new HashMap<>();
+            for (int b = 0; b < matcher.size(); b++) {
+                double expectedMz = matcher.expectedMZ(mz, a, b);
+                int closest = -1;
+                for (int position = 0; position < peaks.size(); position++) {
+                    double error = Math.abs(expectedMz - peaks.getMz(position));
+                    if (error <= mzTolerance && Math.abs(peaks.getMz(position) - mz) > mzTolerance
+                            && (closest < 0 || error < Math.abs(expectedMz - peaks.getMz(closest)))) {
+                        closest = position;
+                    }
+                }
+                if (closest >= 0) {
+                    double ppmError = Math.abs(peaks.getMz(closest) - expectedMz) / expectedMz * 1_000_000d;
+                    ppmErrors.merge(closest, ppmError, Math::min);
+                }
+            }
+            if (!ppmErrors.isEmpty()) {
+                double ppmError = 0;
+                double intensity = 0;
+                for (Map.Entry<Integer, Double> peak : ppmErrors.entrySet()) {
+                    ppmError += peak.getValue();
+                    intensity += peaks.getIntensity(peak.getKey());
+                }
+                hypotheses.add(new AdductHypothesis(matcher.getAdduct(a), ppmErrors.size(), ppmError / ppmErrors.size(),
+                        intensity));
+            }
+        }
+        hypotheses.sort(AdductHypothesis.RANKING);
+        return hypotheses;
+    }
+
+    @Test
+    public void shouldRankTheSameBestHypothesesAsAnExhaustiveEvaluation() {
+        Random random = new Random(7);
+        double[] tolerances = {0.005, 0.2, 2d};
+        for (int iteration = 0; iteration < 3000; iteration++) {
+            IonizationMode ionizationMode = random.nextBoolean() ? IonizationMode.POSITIVE : IonizationMode.NEGATIVE;
+            AdductMatcher matcher = AdductMatcher.forMode(ionizationMode);
+            double mzTolerance = tolerances[random.nextInt(tolerances.length)];
+            double mz = 300 + random.nextDouble() * 1200;
+            double[] peakMzs = new double[2 + random.nextInt(15)];
+            double[] intensities = new double[peakMzs.length];
+            for (int i = 0; i < peakMzs.length; i++) {
+                peakMzs[i] = random.nextInt(2) == 0
+                        ? matcher.expectedMZ(mz, random.nextInt(matcher.size()), random.nextInt(matcher.size()))
+                        + (random.nextDouble() - 0.5) * mzTolerance
+                        : 150 + random.nextDouble() * 2700;
+                intensities[i] = 1000 + random.nextInt(100000);
+            }
+            peakMzs[0] = mz;
+            PeakGroup peaks = PeakPool.of(peakMzs, intensities).all();
+
+            List<AdductHypothesis> expected = rankExhaustively(matcher, mz, peaks, mzTolerance);
+            for (int k : new int[]{1, 3, matcher.size()}) {
+                List<AdductHypothesis> ranked = matcher.rankAdducts(mz, peaks, mzTolerance, k);
+                List<AdductHypothesis> best = expected.subList(0, Math.min(k, expected.size()));
+                assertEquals(best.size(), ranked.size());
+                for (int i = 0; i < best.size(); i++) {
+                    assertEquals(best.get(i).getName(), ranked.get(i).getName());
+                    assertEquals(best.get(i).getSupportingPeaks(), ranked.get(i).getSupportingPeaks());
+                    assertEquals(best.get(i).getMeanPPMError(), ranked.get(i).getMeanPPMError(), 1e-9);
+                    assertEquals(best.get(i).getSupportingIntensity(), ranked.get(i).getSupportingIntensity(), 1e-6);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package adduct;
+
+import lipid.IonizationMode;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AdductTest {
+
+    @Test
+    public void descriptorsShouldKeepTheOrderAndDataOfTheAdductLists() {
+        List<AdductDescriptor> positive = AdductList.getDescriptors(IonizationMode.POSITIVE);
+        List<AdductDescriptor> negative = AdductList.getDescriptors(IonizationMode.NEGATIVE);
+        assertEquals(AdductList.MAPMZPOSITIVEADDUCTS.size(), positive.size());
+        assertEquals(AdductList.MAPMZNEGATIVEADDUCTS.size(), negative.size());
+        assertEquals(positive.size() + negative.size(), AdductList.getDescriptorCount());
+
+        int i = 0;
+        for (Map.Entry<String, Double> entry : AdductList.MAPMZPOSITIVEADDUCTS.entrySet()) {
+            AdductDescriptor descriptor = positive.get(i);
+            assertEquals(i, descriptor.getId());
+            assertEquals(entry.getKey(), descriptor.getName());
+            assertEquals(entry.getValue(), descriptor.getMzOffset(), 0d);
+            assertEquals(IonizationMode.POSITIVE, descriptor.getIonizationMode());
+            assertSame(descriptor, AdductList.getDescriptor(entry.getKey()));
+            i++;
+        }
+        assertEquals(2, AdductList.getDescriptor("[M+2H]2+").getCharge());
+        assertEquals(2, AdductList.getDescriptor("[2M+Na]+").getMultimer());
+        assertEquals(IonizationMode.NEGATIVE, AdductList.getDescriptor("[M+Cl]−").getIonizationMode());
+        assertNull(AdductList.getDescriptor("[M+Li]+"));
+    }
+
+    @Test
+    public void descriptorConversionsShouldMatchTheStringBasedConversions() {
+        double[] mzs = {350.754, 682.4894, 700.500, 738.4564, 1401.0};
+        for (IonizationMode ionizationMode : IonizationMode.values()) {
+            for (AdductDescriptor adduct : AdductList.getDescriptors(ionizationMode)) {
+                for (double mz : mzs) {
+                    double expectedMass = (mz + adduct.getMzOffset()) * Adduct.extractCharge(adduct.getName())
+                            / Adduct.extractMultimer(adduct.getName());
+                    assertEquals(expectedMass, Adduct.getMonoisotopicMassFromMZ(mz, adduct.getName()), 0d);
+                    assertEquals(expectedMass, Adduct.getMonoisotopicMassFromMZ(mz, adduct), 0d);
+                    assertEquals(Adduct.getMZFromMonoisotopicMass(mz, adduct.getName()),
+                            Adduct.getMZFromMonoisotopicMass(mz, adduct), 0d);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldConvertAdductsOutOfTheListsWithoutOffset() {
+        assertEquals(350.0, Adduct.getMZFromMonoisotopicMass(700.0, "[M+2Li]2+"), 0d);
+        assertEquals(700.0, Adduct.getMZFromMonoisotopicMass(700.0, "[M+Li]+"), 0d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownAdductsWhenComputingTheMonoisotopicMass() {
+        Adduct.getMonoisotopicMassFromMZ(700.0, "[M+Li]+");
+    }
+}
@@ -0,0 +1,104 @@
+package adduct;
+
+import lipid.Annotation;
+import lipid.IonizationMode;
+import lipid.Lipid;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FormulaParserTest {
+
+    @Test
+    public void shouldComputeTheExactMassOfTheFormula() {
+        // Monoisotopic masses from chemcalc
+        assertEquals(759.5778, FormulaParser.getMonoisotopicMass("C42H82NO8P"), 0.0001);
+        assertEquals(884.7833, FormulaParser.getMonoisotopicMass("C57H104O6"), 0.0001);
+        assertEquals(838.5571, FormulaParser.getMonoisotopicMass("C43H83O13P"), 0.0001);
+        assertEquals(18.0106, FormulaParser.getMonoisotopicMass("H2O"), 0.0001);
+        assertEquals(57.9586, FormulaParser.getMonoisotopicMass("NaCl"), 0.0001);
+        assertEquals(0, FormulaParser.getMonoisotopicMass("C0"), 0);
+    }
+
+    @Test
+    public void groupsShouldBeMultipliedByTheirCount() {
+        assertEquals(FormulaParser.getMonoisotopicMass("C6H16O8"), FormulaParser.getMonoisotopicMass("C6H12O6(H2O)2"), 1e-9);
+        assertEquals(FormulaParser.getMonoisotopicMass("C2H8N2O2"), FormulaParser.getMonoisotopicMass("(CH2(NH2)O)2"), 1e-9);
+    }
+
+    @Test
+    public void repeatedFormulasShouldBeParsedOnce() {
+        FormulaParser.getMonoisotopicMass("C47H83O13P");
+        int cached = FormulaParser.getCachedFormulas();
+
+        Lipid lipid1 = new Lipid(1, "PI 38:4", "C47H83O13P", "PI", 38, 4);
+        Lipid lipid2 = new Lipid(2, "PI 38:4", "C47H83O13P", "PI", 38, 4);
+
+        assertEquals(cached, FormulaParser.getCachedFormulas());
+        assertEquals(lipid1.getMonoisotopicMass(), lipid2.getMonoisotopicMass(), 0);
+    }
+
+    @Test
+    public void theCacheShouldEvictTheLeastRecentlyUsedFormulas() {
+        FormulaParser.getMonoisotopicMass("C42H82NO8P");
+        for (int carbons = 1; carbons <= FormulaParser.MAX_CACHED_FORMULAS + 10; carbons++) {
+            FormulaParser.getMonoisotopicMass("C" + carbons + "H4O");
+            // Used again and again, so it is never the eldest
+            FormulaParser.getMonoisotopicMass("C42H82NO8P");
+        }
+        assertEquals(FormulaParser.MAX_CACHED_FORMULAS, FormulaParser.getCachedFormulas());
+        assertTrue(FormulaParser.isCached("C42H82NO8P"));
+        assertTrue(FormulaParser.isCached("C" + (FormulaParser.MAX_CACHED_FORMULAS + 10) + "H4O"));
+        assertFalse(FormulaParser.isCached("C1H4O"));
+        // Evicted formulas are parsed again
+        assertEquals(12 + 18.0106 + 2 * 1.007825, FormulaParser.getMonoisotopicMass("C1H4O"), 0.0001);
+    }
+
+    @Test
+    public void lipidsWithAnUnknownFormulaShouldHaveNoMass() {
+        Lipid lipid = new Lipid(1, "PC 34:1", "C42Xx82", "PC", 34, 1);
+        assertTrue(Double.isNaN(lipid.getMonoisotopicMass()));
+        assertTrue(Double.isNaN(new Lipid(2, "PC 34:1", "", "PC", 34, 1).getMonoisotopicMass()));
+
+        Annotation annotation = new Annotation(lipid, 760.5851, 100000, 6.5, IonizationMode.POSITIVE);
+        annotation.setAdduct("[M+H]+");
+        try {
+            annotation.getPPMError();
+            fail("There is no mass to compute the ppm error");
+        } catch (IllegalStateException expected) {
+            // The ppm error is not computed against NaN
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownElementsShouldFail() {
+        FormulaParser.getMonoisotopicMass("C42Xx82");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyFormulasShouldFail() {
+        FormulaParser.getMonoisotopicMass("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyGroupsShouldFail() {
+        FormulaParser.getMonoisotopicMass("C6()2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unclosedGroupsShouldFail() {
+        FormulaParser.getMonoisotopicMass("C6(H2O");
+    }
+
+    @Test
+    public void annotationShouldHaveThePPMErrorOfItsAdduct() {
+        Lipid lipid = new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1);
+        Annotation annotation = new Annotation(lipid, 760.5851 + 0.0038, 100000, 6.5, IonizationMode.POSITIVE);
+        annotation.setAdduct("[M+H]+");
+
+        assertEquals(5, annotation.getPPMError());
+    }
+}
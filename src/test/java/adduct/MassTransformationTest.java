@@ -0,0 +1,49 @@
+package adduct;
+
+import lipid.IonizationMode;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MassTransformationTest {
+
+    private static final double[] MZS = {350.754, 682.4894, 700.500, 722.482, 738.4564, 1401.0, 645.2982,
+            600.300, 885.79056, 857.7593, 913.822};
+
+    @Test
+    public void shouldTransformEveryAdductOfTheIonizationModeLikeTheScalarConversion() {
+        for (IonizationMode ionizationMode : IonizationMode.values()) {
+            List<AdductDescriptor> adducts = AdductList.getDescriptors(ionizationMode);
+            double[][] masses = new double[adducts.size()][MZS.length];
+            MassTransformation.toMonoisotopicMasses(MZS, ionizationMode, masses);
+            for (int a = 0; a < adducts.size(); a++) {
+                for (int i = 0; i < MZS.length; i++) {
+                    assertEquals(Adduct.getMonoisotopicMassFromMZ(MZS[i], adducts.get(a).getName()), masses[a][i], 0d);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldTransformMonoisotopicMassesToMZs() {
+        for (IonizationMode ionizationMode : IonizationMode.values()) {
+            for (AdductDescriptor adduct : AdductList.getDescriptors(ionizationMode)) {
+                double[] mzs = new double[MZS.length];
+                MassTransformation.toMZs(MZS, adduct, mzs);
+                double[] expected = new double[MZS.length];
+                for (int i = 0; i < MZS.length; i++) {
+                    expected[i] = Adduct.getMZFromMonoisotopicMass(MZS[i], adduct.getName());
+                }
+                assertArrayEquals(expected, mzs, 0d);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectShortOutputArrays() {
+        MassTransformation.toMonoisotopicMasses(MZS, AdductList.getDescriptor("[M+H]+"), new double[MZS.length - 1]);
+    }
+}
@@ -0,0 +1,127 @@
+package io;
+
+import lipid.Annotation;
+import lipid.IonizationMode;
+import lipid.Lipid;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Annotation scored(int id, double mz, double rt, int score, int applied) {
+        Annotation annotation = new Annotation(new Lipid(id, "PC 34:" + id, "C42H82NO8P", "PC", 34, id), mz, 123456.78, rt, IonizationMode.POSITIVE);
+        annotation.setAdduct("[M+H]+");
+        for (int i = 0; i < applied; i++) {
+            annotation.addScore(i < score ? 1 : 0);
+        }
+        return annotation;
+    }
+
+    @Test
+    public void shouldWriteCsvRows() throws IOException {
+        Path file = folder.newFile().toPath();
+        try (AnnotationWriter writer = AnnotationWriter.open(file, AnnotationWriter.Format.CSV, 256)) {
+            writer.write(scored(1, 760.58512, 6.5, 2, 3));
+            writer.write(scored(2, 0.00004, 0.1234, 0, 0));
+        }
+        List<String> lines = Files.readAllLines(file);
+        assertEquals("lipid,adduct,mz,rt,intensity,score,normalized_score", lines.get(0));
+        assertEquals("PC 34:1,[M+H]+,760.5851,6.5,123456.8,2,0.6667", lines.get(1));
+        assertEquals("PC 34:2,[M+H]+,0,0.123,123456.8,0,", lines.get(2));
+    }
+
+    @Test
+    public void shouldWriteTheSmallMoleculeSectionOfMzTabM() throws IOException {
+        Path file = folder.newFile().toPath();
+        try (AnnotationWriter writer = AnnotationWriter.open(file, AnnotationWriter.Format.MZTAB_M,
+                URI.create("file:///data/sample1.mzML"), 256)) {
+            writer.write(List.of(scored(7, 700.5, 6.5, 1, 1)));
+        }
+        List<String> lines = Files.readAllLines(file);
+        assertEquals("MTD\tmzTab-version\t2.0.0-M", lines.get(0));
+        for (String mandatory : List.of("mzTab-ID", "software[1]", "quantification_method", "ms_run[1]-location",
+                "assay[1]", "study_variable[1]", "cv[1]-label", "database[1]", "small_molecule-quantification_unit",
+                "small_molecule_feature-quantification_unit", "small_molecule-identification_reliability",
+                "id_confidence_measure[1]")) {
+            assertTrue(mandatory, lines.stream().anyMatch(line -> line.startsWith("MTD\t" + mandatory + "\t")));
+        }
+        assertTrue(lines.contains("MTD\tms_run[1]-location\tfile:///data/sample1.mzML"));
+
+        List<String> header = Arrays.asList(lines.get(lines.size() - 2).split("\t"));
+        String[] row = lines.get(lines.size() - 1).split("\t");
+        assertEquals(header.size(), row.length);
+        assertEquals("SML", row[0]);
+        assertEquals("null", row[header.indexOf("SMF_ID_REFS")]);
+        assertEquals("lipid:7", row[header.indexOf("database_identifier")]);
+        assertEquals("null", row[header.indexOf("smiles")]);
+        assertEquals("null", row[header.indexOf("inchi")]);
+        assertEquals("null", row[header.indexOf("uri")]);
+        assertEquals(759.5778, Double.parseDouble(row[header.indexOf("theoretical_neutral_mass")]), 1e-3);
+        assertEquals("[M+H]1+", row[header.indexOf("adduct_ions")]);
+        assertEquals("[, , normalized elution order score, ]", row[header.indexOf("best_id_confidence_measure")]);
+        assertEquals("1", row[header.indexOf("best_id_confidence_value")]);
+        assertEquals("123456.8", row[header.indexOf("abundance_assay[1]")]);
+        assertEquals("123456.8", row[header.indexOf("abundance_study_variable[1]")]);
+        assertEquals("null", row[header.indexOf("abundance_variation_study_variable[1]")]);
+        assertEquals("700.5", row[header.indexOf("opt_global_exp_mass_to_charge")]);
+    }
+
+    @Test
+    public void shouldWriteTheAdductsAsMzTabM() {
+        assertEquals("[M+H]1+", AnnotationWriter.mzTabAdduct("[M+H]+"));
+        assertEquals("[M-2H]2-", AnnotationWriter.mzTabAdduct("[M-2H]2\u2212"));
+        assertEquals("[M-H]1-", AnnotationWriter.mzTabAdduct("[M-H]\u2212"));
+        assertNull(AnnotationWriter.mzTabAdduct(Annotation.UNKNOWN_ADDUCT));
+    }
+
+    @Test
+    public void concurrentWritersShouldNotMixRows() throws Exception {
+        Path file = folder.newFile().toPath();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (AnnotationWriter writer = AnnotationWriter.open(file, AnnotationWriter.Format.TSV, 512)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int offset = thread * 1000;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        writer.write(scored(offset + i, 500 + (offset + i) * 0.001, 5, 1, 2));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(4000, writer.getWrittenAnnotations());
+        } finally {
+            executor.shutdown();
+        }
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(4001, lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            int id = Integer.parseInt(fields[0].substring("PC 34:".length()));
+            assertEquals(String.format(Locale.ROOT, "%.4f", 500 + id * 0.001).replaceAll("0+$", "").replaceAll("\\.$", ""), fields[2]);
+            assertEquals("0.5", fields[6]);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io;
+
+import lipid.Feature;
+import lipid.IonizationMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FeatureReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void shouldReadCsvWithGroupedPeaks() throws IOException {
+        Path file = write("id,mz,rt,intensity,polarity,grouped_peaks\r\n"
+                + "1,700.500,6.5,100000,POSITIVE,700.5:100000;722.482:80000\r\n"
+                + "\r\n"
+                + "2,885.5499,7.25,2.5e4,-,\r\n");
+        try (FeatureReader reader = FeatureReader.open(file, 64)) {
+            List<Feature> features = reader.nextBatch(10);
+            assertEquals(2, features.size());
+            Feature first = features.get(0);
+            assertEquals(700.5, first.getMz(), 0);
+            assertEquals(6.5, first.getRtMin(), 0);
+            assertEquals(IonizationMode.POSITIVE, first.getIonizationMode());
+            assertEquals(2, first.getGroupedSignals().size());
+            assertEquals(722.482, first.getGroupedSignals().getMz(1), 0);
+            Feature second = features.get(1);
+            assertEquals(25000, second.getIntensity(), 0);
+            assertEquals(IonizationMode.NEGATIVE, second.getIonizationMode());
+            assertTrue(second.getGroupedSignals().isEmpty());
+            assertTrue(reader.nextBatch(10).isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldReadTheFeatureSectionOfMzTabM() throws IOException {
+        Path file = write("MTD\tmzTab-version\t2.0.0-M\n"
+                + "SMH\tSML_ID\tdatabase_identifier\n"
+                + "SML\t1\tnull\n"
+                + "SFH\tSMF_ID\tSME_ID_REFS\tadduct_ion\texp_mass_to_charge\tcharge\tretention_time_in_seconds\tabundance_assay[1]\tabundance_assay[2]\n"
+                + "SMF\t1\tnull\t[M+H]1+\t700.5\t1\t390\t100000\t5\n"
+                + "SMF\t2\tnull\t[M-H]1-\t600.3\t-1\t420\tnull\t5\n");
+        try (FeatureReader reader = FeatureReader.open(file)) {
+            List<Feature> features = reader.nextBatch(10);
+            assertEquals(2, features.size());
+            assertEquals(6.5, features.get(0).getRtMin(), 0);
+            assertEquals(100000, features.get(0).getIntensity(), 0);
+            assertEquals(IonizationMode.POSITIVE, features.get(0).getIonizationMode());
+            assertEquals(IonizationMode.NEGATIVE, features.get(1).getIonizationMode());
+            assertTrue(Double.isNaN(features.get(1).getIntensity()));
+        }
+    }
+
+    @Test
+    public void shouldRejectARowWithoutPolarityAfterAFullRow() throws IOException {
+        Path file = write("mz,rt,intensity,polarity\n"
+                + "700.5,6.5,100000,POSITIVE\n"
+                + "600.3,6.4\n");
+        try (FeatureReader reader = FeatureReader.open(file)) {
+            reader.nextBatch(10);
+            fail("The polarity of the previous row must not be reused");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Missing polarity column"));
+        }
+    }
+
+    @Test
+    public void shouldParseNumbersLikeDoubleParseDoubleInBoundedBatches() throws IOException {
+        Random random = new Random(13);
+        StringBuilder content = new StringBuilder("mz\trt\tintensity\tpolarity\n");
+        List<String> mzs = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String mz;
+            switch (i % 4) {
+                case 0:
+                    mz = String.format(Locale.ROOT, "%.4f", 100 + random.nextDouble() * 1900);
+                    break;
+                case 1:
+                    mz = Double.toString(random.nextDouble() * 2000);
+                    break;
+                case 2:
+                    mz = String.format(Locale.ROOT, "%.6e", random.nextDouble() * 2000);
+                    break;
+                default:
+                    mz = "0.000" + random.nextInt(100000);
+            }
+            mzs.add(mz);
+            content.append(mz).append('\t').append(i % 20).append('\t').append(random.nextInt(1000000)).append("\t+\n");
+        }
+        try (FeatureReader reader = FeatureReader.open(write(content.toString()), 256)) {
+            List<Double> parsed = new ArrayList<>();
+            long read = reader.forEachBatch(333, batch -> {
+                assertTrue(batch.size() <= 333);
+                for (Feature feature : batch) {
+                    parsed.add(feature.getMz());
+                }
+            });
+            assertEquals(mzs.size(), read);
+            for (int i = 0; i < mzs.size(); i++) {
+                assertEquals(mzs.get(i), Double.parseDouble(mzs.get(i)), parsed.get(i), 0);
+            }
+        }
+    }
+}
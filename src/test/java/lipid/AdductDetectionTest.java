@@ -1,8 +1,10 @@
 package lipid;
 
+import adduct.AdductHypothesis;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -133,6 +135,42 @@ public class AdductDetectionTest {
     }
 
 
+    @Test
+    public void shouldRankTheHypothesesBySupportingPeaks() {
+        // [M+H]+ of PC 34:1 with its [M+Na]+ and [M+K]+, and a peak that only supports other hypotheses
+        Peak mH = new Peak(760.5851, 100000.0);
+        Peak mNa = new Peak(782.5670, 60000.0);
+        Peak mK = new Peak(798.5410, 20000.0);
+        Peak other = new Peak(741.5309, 5000.0);
+        Lipid lipid = new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1);
+        Annotation annotation = new Annotation(lipid, mH.getMz(), mH.getIntensity(), 6.5d, IonizationMode.POSITIVE, Set.of(mH, mNa, mK, other));
+
+        List<AdductHypothesis> ranking = annotation.rankAdductsFromSignals(IonizationMode.POSITIVE, 0.005d, 3);
+
+        assertEquals("[M+H]+", ranking.get(0).getName());
+        assertEquals(2, ranking.get(0).getSupportingPeaks());
+        assertEquals(80000.0, ranking.get(0).getSupportingIntensity(), 1e-9);
+        assertTrue(ranking.get(0).getMeanPPMError() < 5);
+        for (int i = 1; i < ranking.size(); i++) {
+            assertTrue(AdductHypothesis.RANKING.compare(ranking.get(i - 1), ranking.get(i)) < 0);
+        }
+        assertEquals(1, annotation.rankAdductsFromSignals(IonizationMode.POSITIVE, 0.005d, 1).size());
+    }
+
+    @Test
+    public void shouldReturnTheSameUnknownAdductWithoutSupportingPeaks() {
+        Lipid lipid = new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1);
+        Peak mH = new Peak(760.5851, 100000.0);
+        Annotation alone = new Annotation(lipid, mH.getMz(), mH.getIntensity(), 6.5d, IonizationMode.POSITIVE, Set.of(mH));
+        Annotation unrelated = new Annotation(lipid, mH.getMz(), mH.getIntensity(), 6.5d, IonizationMode.POSITIVE,
+                Set.of(mH, new Peak(1234.5678, 1000.0)));
+
+        assertEquals(Annotation.UNKNOWN_ADDUCT, alone.detectAdductFromSignals(IonizationMode.POSITIVE, 0.005d));
+        assertEquals(Annotation.UNKNOWN_ADDUCT, unrelated.detectAdductFromSignals(IonizationMode.POSITIVE, 0.005d));
+        assertTrue(unrelated.rankAdductsFromSignals(IonizationMode.POSITIVE, 0.005d, 3).isEmpty());
+    }
+
+
     //NEGATIVE IONIZATION MODE TESTS
 
     @Test
@@ -0,0 +1,82 @@
+package lipid;
+
+import adduct.Adduct;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LipidCatalogue catalogue(List<Lipid> lipids, double[] masses) throws IOException {
+        Path file = folder.newFile().toPath();
+        LipidCatalogue.write(file, lipids, masses);
+        return LipidCatalogue.open(file);
+    }
+
+    @Test
+    public void shouldAnnotateTheFeatureWithTheAdduct() throws IOException {
+        Lipid pc = new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1);
+        LipidCatalogue catalogue = catalogue(List.of(pc), new double[]{759.5778});
+        AnnotationEngine engine = new AnnotationEngine(catalogue, 10);
+        double mz = Adduct.getMZFromMonoisotopicMass(759.5778, "[M+Na]+");
+
+        List<Annotation> annotations = engine.annotate(new Feature(mz, 6.5, 100000, IonizationMode.POSITIVE));
+
+        assertEquals(1, annotations.size());
+        assertEquals(pc, annotations.get(0).getLipid());
+        assertEquals("[M+Na]+", annotations.get(0).getAdduct());
+        assertEquals(6.5, annotations.get(0).getRtMin(), 0);
+        assertTrue(engine.annotate(new Feature(mz, 6.5, 100000, IonizationMode.NEGATIVE)).isEmpty());
+    }
+
+    @Test
+    public void parallelAnnotationShouldKeepTheSequentialOrder() throws IOException {
+        Random random = new Random(2);
+        List<Lipid> lipids = new ArrayList<>();
+        double[] masses = new double[3000];
+        for (int i = 0; i < masses.length; i++) {
+            lipids.add(new Lipid(i, "PC " + i, "C42H82NO8P", "PC", 30 + i % 10, i % 4));
+            masses[i] = 500 + random.nextDouble() * 400;
+        }
+        LipidCatalogue catalogue = catalogue(lipids, masses);
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            IonizationMode mode = random.nextBoolean() ? IonizationMode.POSITIVE : IonizationMode.NEGATIVE;
+            features.add(new Feature(500 + random.nextDouble() * 400, random.nextDouble() * 10, 1000, mode));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AnnotationEngine engine = new AnnotationEngine(catalogue, 50, pool, 7);
+            List<Annotation> expected = new ArrayList<>();
+            for (Feature feature : features) {
+                expected.addAll(engine.annotate(feature));
+            }
+            List<Annotation> annotations = engine.annotate(features);
+            assertTrue(expected.size() > features.size());
+            assertEquals(expected, annotations);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getAdduct(), annotations.get(i).getAdduct());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void featuresWithoutIonizationModeShouldBeRejected() {
+        new Feature(760.5851, 6.5, 100000, null);
+    }
+}
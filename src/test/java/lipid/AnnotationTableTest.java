@@ -0,0 +1,56 @@
+package lipid;
+
+import adduct.AdductList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AnnotationTableTest {
+
+    @Test
+    public void shouldGrowAndInternTheLipids() {
+        Lipid pc = new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1);
+        Lipid pe = new Lipid(2, "PE 34:1", "C39H76NO8P", "PE", 34, 1);
+        int mhId = AdductList.getDescriptor("[M+H]+").getId();
+        AnnotationTable table = new AnnotationTable(2);
+        for (int i = 0; i < 10; i++) {
+            int row = table.addRow(i % 2 == 0 ? pc : pe, 700 + i, i, 1000 * i, IonizationMode.POSITIVE, i % 3 == 0 ? mhId : -1);
+            assertEquals(i, row);
+        }
+        assertEquals(10, table.size());
+        assertEquals(2, table.getLipidCount());
+        assertEquals(pe, table.getLipid(7));
+        assertEquals(707, table.getMz(7), 0);
+        assertEquals(7000, table.row(7).getIntensity(), 0);
+        assertEquals("[M+H]+", table.getAdduct(6));
+        assertNull(table.getAdduct(7));
+    }
+
+    @Test
+    public void shouldRoundTripTheScoresOfTheRules() throws InterruptedException {
+        List<Annotation> annotations = new ArrayList<>();
+        annotations.add(new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1), 760.585, 1000, 6.0, IonizationMode.POSITIVE));
+        annotations.add(new Annotation(new Lipid(2, "PC 36:1", "C44H86NO8P", "PC", 36, 1), 788.616, 1000, 7.0, IonizationMode.POSITIVE));
+        annotations.add(new Annotation(new Lipid(3, "PC 36:2", "C44H84NO8P", "PC", 36, 2), 786.600, 1000, 6.5, IonizationMode.POSITIVE));
+
+        AnnotationTable table = AnnotationTable.fromAnnotations(annotations);
+        List<Annotation> scored = table.toAnnotations();
+        try (LipidScorer lipidScorer = new LipidScorer(1)) {
+            lipidScorer.score(scored);
+        }
+        table.updateScores(scored);
+
+        for (int row = 0; row < table.size(); row++) {
+            assertEquals(scored.get(row).getScore(), table.getScore(row));
+            assertEquals(scored.get(row).getNormalizedScore(), table.row(row).getNormalizedScore(), 0);
+            Annotation copy = table.toAnnotation(row);
+            assertEquals(scored.get(row).getTotalScoresApplied(), copy.getTotalScoresApplied());
+        }
+        // PC 36:1 elutes after PC 34:1 (more carbons) and after PC 36:2 (fewer double bonds)
+        assertEquals(2, table.getScore(1));
+    }
+}
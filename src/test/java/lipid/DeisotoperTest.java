@@ -0,0 +1,43 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeisotoperTest {
+
+    private final Deisotoper deisotoper = new Deisotoper(0.01, 2);
+
+    @Test
+    public void shouldCollapseTheEnvelopesIntoTheirMonoisotopicPeaks() {
+        PeakPool pool = PeakPool.of(
+                new double[]{700.500, 701.5034, 702.5067, 722.482, 723.4854, 350.754, 351.2557, 351.7574},
+                new double[]{100000, 45000, 12000, 80000, 36000, 50000, 22000, 6000});
+
+        PeakGroup monoisotopic = deisotoper.deisotope(pool.all());
+
+        assertEquals(Set.of(new Peak(350.754, 0), new Peak(700.5, 0), new Peak(722.482, 0)), monoisotopic.toPeaks());
+    }
+
+    @Test
+    public void shouldKeepPeaksMoreIntenseThanThePreviousOne() {
+        // Same spacing, but 701.5034 is more intense than 700.5, so it is not an isotope
+        PeakPool pool = PeakPool.of(new double[]{700.500, 701.5034}, new double[]{10000, 45000});
+        assertEquals(2, deisotoper.deisotope(pool.all()).size());
+    }
+
+    @Test
+    public void shouldDetectTheAdductOnTheMonoisotopicPeaks() {
+        Peak mH = new Peak(700.500, 100000.0);      // [M+H]+
+        Peak mHIsotope = new Peak(701.5034, 45000.0);
+        Peak mNa = new Peak(722.482, 80000.0);      // [M+Na]+
+        Peak mNaIsotope = new Peak(723.4854, 36000.0);
+        Annotation annotation = new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1), mH.getMz(),
+                mH.getIntensity(), 6.5, IonizationMode.POSITIVE, Set.of(mH, mHIsotope, mNa, mNaIsotope));
+
+        assertEquals(2, deisotoper.deisotope(annotation.getPeakGroup()).size());
+        assertEquals("[M+H]+", annotation.detectAdductFromSignals(IonizationMode.POSITIVE, 0.01, deisotoper));
+    }
+}
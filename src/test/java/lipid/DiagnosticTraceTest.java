@@ -0,0 +1,64 @@
+package lipid;
+
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticTraceTest {
+
+    @Before
+    public void setup() {
+        DiagnosticTrace.reset();
+    }
+
+    @After
+    public void tearDown() {
+        DiagnosticTrace.disable();
+        DiagnosticTrace.reset();
+    }
+
+    @Test
+    public void shouldNotCountAnythingWhenDisabled() {
+        DiagnosticTrace.disable();
+        Annotation annotation = new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1), 700.49999d, 80000.0,
+                6.5d, IonizationMode.POSITIVE, Set.of(new Peak(700.500, 100000.0), new Peak(722.482, 80000.0)));
+        annotation.detectAdductFromSignals(IonizationMode.POSITIVE, 10d);
+
+        DiagnosticTrace.Counters counters = DiagnosticTrace.snapshot();
+        assertEquals(0, counters.getHypothesesTested());
+        assertEquals(0, counters.getMatches());
+        assertTrue(counters.getRuleFirings().isEmpty());
+    }
+
+    @Test
+    public void shouldCountAdductHypothesesAndRuleFirings() {
+        DiagnosticTrace.enable(1000);
+        Annotation annotation = new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1), 700.49999d, 80000.0,
+                6.5d, IonizationMode.POSITIVE, Set.of(new Peak(700.500, 100000.0), new Peak(722.482, 80000.0)));
+        assertEquals("[M+H]+", annotation.detectAdductFromSignals(IonizationMode.POSITIVE, 10d));
+
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
+        RuleUnitInstance<LipidScoreUnit> instance = RuleUnitProvider.get().createRuleUnitInstance(lipidScoreUnit);
+        try {
+            lipidScoreUnit.getAnnotations().add(new Annotation(new Lipid(1, "TG 54:3", "C57H104O6", "TG", 54, 3), 885.79056, 10E6, 10d, IonizationMode.POSITIVE));
+            lipidScoreUnit.getAnnotations().add(new Annotation(new Lipid(2, "TG 52:3", "C55H100O6", "TG", 52, 3), 857.7593, 10E7, 9d, IonizationMode.POSITIVE));
+            lipidScoreUnit.getAnnotations().add(new Annotation(new Lipid(3, "TG 56:3", "C59H108O6", "TG", 56, 3), 913.822, 10E5, 11d, IonizationMode.POSITIVE));
+            instance.fire();
+        } finally {
+            instance.close();
+        }
+
+        DiagnosticTrace.Counters counters = DiagnosticTrace.snapshot();
+        assertTrue(counters.getHypothesesTested() > 0);
+        assertEquals(1, counters.getMatches());
+        assertEquals(3, counters.getRuleFirings("RT positive - same type, same double bonds, more carbons"));
+        assertEquals(1, counters.getRuleFirings().size());
+    }
+}
@@ -0,0 +1,120 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ElutionOrderScorerTest {
+
+    private static final String[] LIPID_TYPES = {"PG", "PE", "PI", "PA", "PS", "PC", "TG", "SM"};
+
+    /**
+     * Random annotations with few distinct carbons, double bonds and RTs so that every rule fires and there are ties
+     */
+    private static List<Annotation> randomAnnotations(Random random, int size) {
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String lipidType = LIPID_TYPES[random.nextInt(LIPID_TYPES.length)];
+            int carbons = 30 + random.nextInt(4);
+            int doubleBonds = random.nextInt(3);
+            Lipid lipid = new Lipid(i, lipidType + " " + carbons + ":" + doubleBonds, "C0", lipidType, carbons, doubleBonds);
+            double rt = random.nextInt(8) * 0.5;
+            annotations.add(new Annotation(lipid, 700 + random.nextDouble() * 100, 1000, rt, IonizationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    private static List<Annotation> copy(List<Annotation> annotations) {
+        List<Annotation> copies = new ArrayList<>();
+        for (Annotation a : annotations) {
+            copies.add(new Annotation(a.getLipid(), a.getMz(), a.getIntensity(), a.getRtMin(), a.getIonizationMode()));
+        }
+        return copies;
+    }
+
+    private static long score(List<Annotation> annotations, ScoringEngine scoringEngine) {
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit(scoringEngine);
+        for (Annotation annotation : annotations) {
+            lipidScoreUnit.getAnnotations().add(annotation);
+        }
+        return lipidScoreUnit.score();
+    }
+
+    @Test
+    public void shouldApplyTheSameScoresAsTheDroolsRules() {
+        Random random = new Random(7);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            List<Annotation> droolsAnnotations = randomAnnotations(random, 5 + random.nextInt(150));
+            List<Annotation> nativeAnnotations = copy(droolsAnnotations);
+
+            long droolsFirings = score(droolsAnnotations, ScoringEngine.DROOLS);
+            long nativeFirings = score(nativeAnnotations, ScoringEngine.SORT_AND_SWEEP);
+
+            assertEquals(droolsFirings, nativeFirings);
+            for (int i = 0; i < droolsAnnotations.size(); i++) {
+                assertEquals(droolsAnnotations.get(i).getScore(), nativeAnnotations.get(i).getScore());
+                assertEquals(droolsAnnotations.get(i).getTotalScoresApplied(), nativeAnnotations.get(i).getTotalScoresApplied());
+            }
+        }
+    }
+
+    @Test
+    public void shouldScoreTheLipidTypeOrder() {
+        Annotation pi = new Annotation(new Lipid(1, "PI 34:0", "C43H83O13P", "PI", 54, 0), 839.5644179056, 10E6, 10d, IonizationMode.POSITIVE);
+        Annotation pg = new Annotation(new Lipid(2, "PG 34:0", "C40H79O10P", "PG", 54, 0), 751.54836, 10E7, 9d, IonizationMode.POSITIVE);
+        Annotation pc = new Annotation(new Lipid(3, "PC 34:0", "C42H84NO8P", "PC", 54, 0), 913.822, 10E5, 8d, IonizationMode.POSITIVE);
+
+        assertEquals(3, score(List.of(pi, pg, pc), ScoringEngine.SORT_AND_SWEEP));
+
+        assertEquals(0d, pi.getNormalizedScore(), 0.01);
+        assertEquals(0d, pg.getNormalizedScore(), 0.01);
+        assertEquals(-1.0, pc.getNormalizedScore(), 0.01);
+    }
+
+    @Test
+    public void parallelScoringShouldGiveTheSequentialScores() {
+        List<Annotation> sequential = new SyntheticDatasetGenerator(5, 1.5, IonizationMode.POSITIVE).annotations(5000);
+        List<Annotation> parallel = copy(sequential);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(ElutionOrderScorer.score(sequential), ElutionOrderScorer.score(parallel, pool));
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getScore(), parallel.get(i).getScore());
+            assertEquals(sequential.get(i).getTotalScoresApplied(), parallel.get(i).getTotalScoresApplied());
+        }
+    }
+
+    @Test
+    public void concurrentScoresShouldNotBeLost() throws InterruptedException {
+        Annotation annotation = new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1), 760.5851, 1000, 6.5,
+                IonizationMode.POSITIVE);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            int delta = thread % 2 == 0 ? 1 : -1;
+            executor.execute(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    annotation.addScore(delta);
+                    double normalizedScore = annotation.getNormalizedScore();
+                    assertTrue(normalizedScore >= -1 && normalizedScore <= 1);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(0, annotation.getScore());
+        assertEquals(400_000, annotation.getTotalScoresApplied());
+    }
+}
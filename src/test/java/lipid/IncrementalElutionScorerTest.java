@@ -0,0 +1,114 @@
+package lipid;
+
+import org.drools.ruleunits.api.DataHandle;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalElutionScorerTest {
+
+    private static final String[] LIPID_TYPES = {"PG", "PE", "PI", "PC", "TG"};
+
+    private static Annotation randomAnnotation(Random random, int id) {
+        String lipidType = LIPID_TYPES[random.nextInt(LIPID_TYPES.length)];
+        int carbons = 30 + random.nextInt(4);
+        int doubleBonds = random.nextInt(3);
+        Lipid lipid = new Lipid(id, lipidType + " " + carbons + ":" + doubleBonds, "C0", lipidType, carbons, doubleBonds);
+        return new Annotation(lipid, 700 + random.nextDouble() * 100, 1000, random.nextInt(8) * 0.5, IonizationMode.POSITIVE);
+    }
+
+    private static void assertSameScoresAsAFullScoring(List<Annotation> annotations) {
+        List<Annotation> copies = new ArrayList<>();
+        for (Annotation a : annotations) {
+            copies.add(new Annotation(a.getLipid(), a.getMz(), a.getIntensity(), a.getRtMin(), a.getIonizationMode()));
+        }
+        ElutionOrderScorer.score(copies);
+        for (int i = 0; i < annotations.size(); i++) {
+            assertEquals(copies.get(i).getScore(), annotations.get(i).getScore());
+            assertEquals(copies.get(i).getTotalScoresApplied(), annotations.get(i).getTotalScoresApplied());
+        }
+    }
+
+    @Test
+    public void shouldKeepTheScoresOfAFullScoringWhileAnnotationsAreAddedAndRemoved() {
+        Random random = new Random(3);
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit(ScoringEngine.INCREMENTAL);
+        List<Annotation> current = new ArrayList<>();
+        List<DataHandle> handles = new ArrayList<>();
+        int id = 0;
+        for (int step = 0; step < 60; step++) {
+            int changes = 1 + random.nextInt(10);
+            for (int c = 0; c < changes; c++) {
+                if (!current.isEmpty() && random.nextInt(4) == 0) {
+                    int removed = random.nextInt(current.size());
+                    Annotation annotation = current.remove(removed);
+                    lipidScoreUnit.getAnnotations().remove(handles.remove(removed));
+                    lipidScoreUnit.score();
+                    // A retracted annotation does not keep the scores of its pairs
+                    assertEquals(0, annotation.getScore());
+                    assertEquals(0, annotation.getTotalScoresApplied());
+                } else {
+                    Annotation annotation = randomAnnotation(random, id++);
+                    current.add(annotation);
+                    handles.add(lipidScoreUnit.getAnnotations().add(annotation));
+                }
+            }
+            lipidScoreUnit.score();
+            assertSameScoresAsAFullScoring(current);
+        }
+    }
+
+    @Test
+    public void shouldOnlyFireThePairsOfTheNewAnnotations() {
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit(ScoringEngine.INCREMENTAL);
+        Annotation tg52 = new Annotation(new Lipid(2, "TG 52:3", "C55H100O6", "TG", 52, 3), 857.7593, 10E7, 9d, IonizationMode.POSITIVE);
+        Annotation tg54 = new Annotation(new Lipid(1, "TG 54:3", "C57H104O6", "TG", 54, 3), 885.79056, 10E6, 10d, IonizationMode.POSITIVE);
+        lipidScoreUnit.getAnnotations().add(tg52);
+        lipidScoreUnit.getAnnotations().add(tg54);
+        assertEquals(1, lipidScoreUnit.score());
+        assertEquals(0, lipidScoreUnit.score());
+
+        Annotation tg56 = new Annotation(new Lipid(3, "TG 56:3", "C59H108O6", "TG", 56, 3), 913.822, 10E5, 11d, IonizationMode.POSITIVE);
+        DataHandle handle = lipidScoreUnit.getAnnotations().add(tg56);
+        assertEquals(2, lipidScoreUnit.score());
+        assertEquals(1.0, tg52.getNormalizedScore(), 0.01);
+        assertEquals(2, tg52.getTotalScoresApplied());
+
+        // Correcting a misannotation: the RT of TG 56:3 was wrong
+        Annotation corrected = new Annotation(tg56.getLipid(), tg56.getMz(), tg56.getIntensity(), 8d, IonizationMode.POSITIVE);
+        lipidScoreUnit.getAnnotations().update(handle, corrected);
+        lipidScoreUnit.score();
+        assertEquals(-1.0, corrected.getNormalizedScore(), 0.01);
+        assertEquals(0d, tg52.getNormalizedScore(), 0.01);
+        assertEquals(0d, tg54.getNormalizedScore(), 0.01);
+    }
+
+    @Test
+    public void emptyPartitionsShouldBeDropped() {
+        IncrementalElutionScorer scorer = new IncrementalElutionScorer();
+        List<Annotation> annotations = new ArrayList<>();
+        for (int carbons = 30; carbons < 40; carbons++) {
+            Annotation annotation = new Annotation(new Lipid(carbons, "PC " + carbons + ":1", null, "PC", carbons, 1),
+                    700 + carbons, 1000, carbons / 5d, IonizationMode.POSITIVE);
+            annotations.add(annotation);
+            scorer.add(annotation);
+        }
+        scorer.fire();
+        // One (type, double bonds) partition, and one (type, carbons) and (carbons, double bonds) per carbon count
+        assertEquals(1 + 10 + 10, scorer.getPartitions());
+
+        scorer.remove(annotations.get(0));
+        scorer.fire();
+        assertEquals(1 + 9 + 9, scorer.getPartitions());
+        for (Annotation annotation : annotations) {
+            scorer.remove(annotation);
+        }
+        scorer.fire();
+        assertEquals(0, scorer.size());
+        assertEquals(0, scorer.getPartitions());
+    }
+}
@@ -0,0 +1,40 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class IndexSortTest {
+
+    @Test
+    public void shouldOrderLikeDoubleCompare() {
+        double[] keys = {3.5, Double.NaN, -0.0, 0.0, -2.25, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, -0.0};
+        assertArrayEquals(new int[]{5, 4, 2, 7, 3, 0, 6, 1}, IndexSort.order(keys));
+    }
+
+    @Test
+    public void shouldBeStableOnShortAndLongArrays() {
+        Random random = new Random(7);
+        for (int n : new int[]{0, 1, 10, 63, 64, 1000, 20000}) {
+            double[] keys = new double[n];
+            for (int i = 0; i < n; i++) {
+                // Few distinct values, so there are many ties, negative ones and NaNs
+                int value = random.nextInt(50);
+                keys[i] = value == 0 ? Double.NaN : (value - 25) * 1.5;
+            }
+            assertArrayEquals("n=" + n, boxedOrder(keys), IndexSort.order(keys));
+        }
+    }
+
+    private static int[] boxedOrder(double[] keys) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Double.compare(keys[i1], keys[i2]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+}
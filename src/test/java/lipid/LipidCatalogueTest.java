@@ -0,0 +1,91 @@
+package lipid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LipidCatalogueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldFindTheSameLipidsAsALinearScan() throws IOException {
+        Random random = new Random(5);
+        String[] types = {"PC", "PE", "PG", "PI", "PS", "TG"};
+        List<Lipid> lipids = new ArrayList<>();
+        double[] masses = new double[5000];
+        for (int i = 0; i < masses.length; i++) {
+            String type = types[random.nextInt(types.length)];
+            int carbons = 28 + random.nextInt(20);
+            int doubleBonds = random.nextInt(7);
+            lipids.add(new Lipid(i, type + " " + carbons + ":" + doubleBonds, "C" + carbons + "H80NO8P", type, carbons, doubleBonds));
+            masses[i] = 400 + random.nextDouble() * 600;
+        }
+        Path file = folder.newFile("lipids.bin").toPath();
+        LipidCatalogue.write(file, lipids, masses);
+        LipidCatalogue catalogue = LipidCatalogue.open(file);
+        assertEquals(lipids.size(), catalogue.size());
+        assertEquals(0, catalogue.getMaterializedLipids());
+
+        for (int run = 0; run < 200; run++) {
+            double mass = 400 + random.nextDouble() * 600;
+            int ppm = 1 + random.nextInt(50);
+            double tolerance = mass * ppm / 1_000_000d;
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < masses.length; i++) {
+                if (masses[i] >= mass - tolerance && masses[i] <= mass + tolerance) {
+                    expected.add(i);
+                }
+            }
+            List<Lipid> found = catalogue.findByMass(mass, ppm);
+            assertEquals(expected.size(), found.size());
+            for (Lipid lipid : found) {
+                Lipid original = lipids.get(lipid.getCompoundId());
+                assertEquals(original.getName(), lipid.getName());
+                assertEquals(original.getFormula(), lipid.getFormula());
+                assertEquals(original.getLipidType(), lipid.getLipidType());
+                assertEquals(original.getCarbonCount(), lipid.getCarbonCount());
+                assertEquals(original.getDoubleBondsCount(), lipid.getDoubleBondsCount());
+                assertEquals(masses[lipid.getCompoundId()], catalogue.getNeutralMass(catalogue.lowerBound(masses[lipid.getCompoundId()])), 0);
+            }
+        }
+    }
+
+    @Test
+    public void lipidsShouldBeInternedByCompoundId() throws IOException {
+        Path file = folder.newFile("lipids.bin").toPath();
+        LipidCatalogue.write(file, List.of(new Lipid(7, "PC 34:1", "C42H82NO8P", "PC", 34, 1),
+                new Lipid(3, "PE 34:1", "C39H76NO8P", "PE", 34, 1)), new double[]{759.5778, 717.5309});
+        LipidCatalogue catalogue = LipidCatalogue.open(file);
+        assertEquals(3, catalogue.getLipid(0).getCompoundId());
+        assertSame(catalogue.getLipid(1), catalogue.findByMass(759.5778, 5).get(0));
+        assertEquals(2, catalogue.findByMassRange(700, 800).size());
+        assertEquals(2, catalogue.getMaterializedLipids());
+    }
+
+    @Test
+    public void nullStringsShouldStayNull() throws IOException {
+        Path file = folder.newFile("lipids.bin").toPath();
+        LipidCatalogue.write(file, List.of(new Lipid(7, "PC 34:1", null, "PC", 34, 1, 759.5778),
+                new Lipid(3, null, "", null, 34, 1)), new double[]{759.5778, 717.5309});
+        LipidCatalogue catalogue = LipidCatalogue.open(file);
+        Lipid withoutNameAndType = catalogue.getLipid(0);
+        assertNull(withoutNameAndType.getName());
+        assertEquals("", withoutNameAndType.getFormula());
+        assertNull(withoutNameAndType.getLipidType());
+        Lipid withoutFormula = catalogue.getLipid(1);
+        assertNull(withoutFormula.getFormula());
+        assertEquals("PC 34:1", withoutFormula.getName());
+    }
+}
@@ -0,0 +1,34 @@
+package lipid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LipidClassTest {
+
+    @Test
+    public void shouldFollowTheElutionOrder() {
+        LipidClass[] order = {LipidClass.PG, LipidClass.PE, LipidClass.PI, LipidClass.PA, LipidClass.PS, LipidClass.PC,
+                LipidClass.OTHER};
+        for (int i = 1; i < order.length; i++) {
+            assertTrue(order[i - 1].getElutionRank() < order[i].getElutionRank());
+        }
+    }
+
+    @Test
+    public void shouldMapTheLipidTypes() {
+        assertEquals(LipidClass.PC, LipidClass.fromLipidType("PC"));
+        assertEquals(LipidClass.OTHER, LipidClass.fromLipidType("TG"));
+        assertEquals(LipidClass.OTHER, LipidClass.fromLipidType("OTHER"));
+        assertEquals(LipidClass.OTHER, LipidClass.fromLipidType(null));
+
+        Annotation annotation = new Annotation(new Lipid(1, "PE 36:2", "C41H78NO8P", "PE", 36, 2), 744.5538, 1000, 7.5,
+                IonizationMode.POSITIVE);
+        assertEquals(LipidClass.PE, annotation.getLipidClass());
+        assertEquals(2, annotation.getLipidClassRank());
+        assertEquals("PE", annotation.getLipidType());
+        assertEquals(36, annotation.getCarbonCount());
+        assertEquals(2, annotation.getDoubleBondsCount());
+    }
+}
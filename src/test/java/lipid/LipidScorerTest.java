@@ -0,0 +1,96 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LipidScorerTest {
+
+    private static List<Annotation> carbonSeries(double... rts) {
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < rts.length; i++) {
+            Lipid lipid = new Lipid(i, "TG " + (50 + 2 * i) + ":3", "C0", "TG", 50 + 2 * i, 3);
+            annotations.add(new Annotation(lipid, 800 + i, 1000, rts[i], IonizationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    @Test
+    public void shouldReuseTheRuleUnitInstanceBetweenSamples() throws InterruptedException {
+        try (LipidScorer lipidScorer = new LipidScorer(1)) {
+            List<Annotation> ordered = carbonSeries(9d, 10d, 11d);
+            assertEquals(3, lipidScorer.score(ordered));
+            for (Annotation annotation : ordered) {
+                assertEquals(1.0, annotation.getNormalizedScore(), 0.01);
+            }
+
+            // The annotations of the previous sample must not be joined with the new ones
+            List<Annotation> reversed = carbonSeries(11d, 10d);
+            assertEquals(1, lipidScorer.score(reversed));
+            for (Annotation annotation : reversed) {
+                assertEquals(-1.0, annotation.getNormalizedScore(), 0.01);
+                assertEquals(1, annotation.getTotalScoresApplied());
+            }
+            assertEquals(1, lipidScorer.getCreatedInstances());
+        }
+    }
+
+    @Test
+    public void shouldNotCreateMoreInstancesThanThePoolSize() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (LipidScorer lipidScorer = new LipidScorer(2)) {
+            List<Future<Long>> firings = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                firings.add(executor.submit(() -> lipidScorer.score(carbonSeries(9d, 10d, 11d, 12d))));
+            }
+            for (Future<Long> future : firings) {
+                assertEquals(6L, (long) future.get());
+            }
+            assertTrue(lipidScorer.getCreatedInstances() <= 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void waitingCallersShouldFailWhenTheScorerIsClosed() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            LipidScorer lipidScorer = new LipidScorer(1);
+            double[] rts = new double[2000];
+            for (int i = 0; i < rts.length; i++) {
+                rts[i] = i;
+            }
+            // Holds the only instance while the second sample waits for it
+            Future<Long> large = executor.submit(() -> lipidScorer.score(carbonSeries(rts)));
+            Thread.sleep(200);
+            Future<Long> waiting = executor.submit(() -> lipidScorer.score(carbonSeries(9d, 10d)));
+            Thread.sleep(200);
+            lipidScorer.close();
+
+            try {
+                waiting.get();
+                fail("The waiting sample should not be scored after close");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertEquals(rts.length * (rts.length - 1L) / 2, (long) large.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTheIncrementalEngine() {
+        new LipidScorer(ScoringEngine.INCREMENTAL, 1);
+    }
+}
@@ -0,0 +1,73 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PeakGrouperTest {
+
+    @Test
+    public void shouldGroupTheFeaturesWithinTheRtWindow() {
+        List<Feature> features = List.of(
+                new Feature(722.482, 6.52, 80000, IonizationMode.POSITIVE),
+                new Feature(810.600, 9.10, 50000, IonizationMode.POSITIVE),
+                new Feature(700.500, 6.50, 100000, IonizationMode.POSITIVE),
+                new Feature(738.456, 6.55, 40000, IonizationMode.POSITIVE),
+                new Feature(600.300, 6.70, 20000, IonizationMode.POSITIVE));
+
+        List<Set<Peak>> groups = new PeakGrouper(0.1).group(features);
+
+        assertEquals(3, groups.size());
+        assertEquals(Set.of(new Peak(700.5, 0), new Peak(722.482, 0), new Peak(738.456, 0)), groups.get(0));
+        assertEquals(Set.of(new Peak(600.3, 0)), groups.get(1));
+        assertEquals(Set.of(new Peak(810.6, 0)), groups.get(2));
+    }
+
+    @Test
+    public void shouldSplitCoelutingFeaturesWithDifferentProfiles() {
+        List<Feature> features = List.of(
+                new Feature(700.500, 6.50, 100000, IonizationMode.POSITIVE),
+                new Feature(722.482, 6.51, 80000, IonizationMode.POSITIVE),
+                new Feature(650.400, 6.52, 90000, IonizationMode.POSITIVE));
+        double[][] profiles = {{1, 5, 9, 5, 1}, {1, 4, 8, 4, 1}, {9, 5, 1, 0, 0}};
+
+        List<Feature> grouped = new PeakGrouper(0.1, 0.9).withGroupedSignals(features, profiles);
+
+        assertEquals(2, grouped.get(0).getGroupedSignals().size());
+        assertSame(grouped.get(0).getGroupedSignals(), grouped.get(1).getGroupedSignals());
+        assertEquals(1, grouped.get(2).getGroupedSignals().size());
+        assertEquals(650.4, grouped.get(2).getGroupedSignals().getMz(0), 0);
+        // Both groups are views of one pool with the peaks of the sample
+        assertSame(grouped.get(0).getGroupedSignals().getPool(), grouped.get(2).getGroupedSignals().getPool());
+        assertEquals(3, grouped.get(0).getGroupedSignals().getPool().size());
+        // By RT only the three features co-elute
+        assertEquals(3, new PeakGrouper(0.1).withGroupedSignals(features, null).get(0).getGroupedSignals().size());
+    }
+
+    @Test
+    public void groupsWithTheSameMzsShouldKeepTheirOwnIntensities() {
+        List<Feature> features = List.of(
+                new Feature(760.5851, 2, 1000, IonizationMode.POSITIVE),
+                new Feature(782.5670, 2, 800, IonizationMode.POSITIVE),
+                new Feature(760.5851, 15, 1e6, IonizationMode.POSITIVE),
+                new Feature(782.5670, 15, 9e5, IonizationMode.POSITIVE),
+                new Feature(782.5670, 15.01, 5, IonizationMode.POSITIVE));
+
+        List<Feature> grouped = new PeakGrouper(0.1).withGroupedSignals(features, null);
+
+        PeakGroup early = grouped.get(0).getGroupedSignals();
+        PeakGroup late = grouped.get(2).getGroupedSignals();
+        assertSame(early.getPool(), late.getPool());
+        assertEquals(2, early.size());
+        assertEquals(1000, early.getIntensity(0), 0);
+        assertEquals(800, early.getIntensity(1), 0);
+        // The repeated mz of the late group is stored once, with the first of its features
+        assertEquals(2, late.size());
+        assertEquals(1e6, late.getIntensity(0), 0);
+        assertEquals(9e5, late.getIntensity(1), 0);
+    }
+}
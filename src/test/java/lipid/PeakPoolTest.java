@@ -0,0 +1,91 @@
+package lipid;
+
+import adduct.AdductMatcher;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeakPoolTest {
+
+    @Test
+    public void shouldSortAndRemoveRepeatedMzs() {
+        PeakPool pool = PeakPool.of(new double[]{722.482, 700.5, 350.754, 700.5}, new double[]{8, 10, 5, 1});
+        assertEquals(3, pool.size());
+        assertEquals(350.754, pool.getMz(0), 0);
+        // The first peak with a repeated mz is kept
+        assertEquals(10, pool.getIntensity(1), 0);
+        assertEquals(2, pool.indexOf(722.482));
+        assertEquals(-1, pool.indexOf(722.4));
+    }
+
+    @Test
+    public void slicesAndIndexListsShouldShareThePool() {
+        PeakPool pool = PeakPool.of(List.of(new Peak(700.5, 10), new Peak(722.482, 8), new Peak(738.456, 6), new Peak(350.754, 5)));
+        PeakGroup slice = pool.slice(1, 3);
+        PeakGroup group = pool.group(3, 1, 3);
+        assertEquals(2, slice.size());
+        assertEquals(700.5, slice.getMz(0), 0);
+        assertEquals(2, group.size());
+        assertEquals(738.456, group.getMz(1), 0);
+        assertEquals(Set.of(new Peak(700.5, 10), new Peak(738.456, 6)), group.toPeaks());
+        assertEquals(group.toPeaks(), pool.group(List.of(new Peak(738.456, 0), new Peak(700.5, 0))).toPeaks());
+    }
+
+    @Test
+    public void lowerBoundShouldReturnTheFirstMzNotLowerThanTheKey() {
+        PeakPool pool = PeakPool.of(new double[]{1d, 2d, 5d}, new double[3]);
+        assertEquals(0, pool.lowerBound(0.5));
+        assertEquals(1, pool.lowerBound(2d));
+        assertEquals(2, pool.lowerBound(3d));
+        assertEquals(3, pool.lowerBound(6d));
+        PeakGroup group = pool.group(0, 2);
+        assertEquals(1, group.lowerBound(2d));
+        assertEquals(2, group.lowerBound(6d));
+    }
+
+    /**
+     * Every adduct, every other adduct and every peak of the group, in AdductList order
+     */
+    private static int firstSupportedAdductByScan(AdductMatcher matcher, double mz, PeakGroup group, double tolerance) {
+        for (int a = 0; a < matcher.size(); a++) {
+            for (int b = 0; b < matcher.size(); b++) {
+                double expectedMz = matcher.expectedMZ(mz, a, b);
+                for (int position = 0; position < group.size(); position++) {
+                    double peakMz = group.getMz(position);
+                    if (Math.abs(expectedMz - peakMz) <= tolerance && Math.abs(peakMz - mz) > tolerance) {
+                        return a;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void shouldDetectTheSameAdductsAsALinearScan() {
+        Random random = new Random(11);
+        AdductMatcher matcher = AdductMatcher.forMode(IonizationMode.POSITIVE);
+        double[] poolMzs = new double[400];
+        for (int i = 0; i < poolMzs.length; i++) {
+            poolMzs[i] = 300 + random.nextInt(60000) * 0.01;
+        }
+        PeakPool pool = PeakPool.of(poolMzs, new double[poolMzs.length]);
+        for (int run = 0; run < 300; run++) {
+            int[] indexes = new int[2 + random.nextInt(8)];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = random.nextInt(pool.size());
+            }
+            PeakGroup group = pool.group(indexes);
+            double mz = group.getMz(random.nextInt(group.size()));
+            double tolerance = random.nextDouble() * 0.05;
+            assertEquals(firstSupportedAdductByScan(matcher, mz, group, tolerance), matcher.findFirstSupportedAdduct(mz, group, tolerance));
+            int from = random.nextInt(pool.size() - 10);
+            PeakGroup slice = pool.slice(from, from + 10);
+            assertEquals(firstSupportedAdductByScan(matcher, mz, slice, tolerance), matcher.findFirstSupportedAdduct(mz, slice, tolerance));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package lipid;
+
+import adduct.AdductList;
+import adduct.MassTransformation;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class PipelineEventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+
+    @Test
+    public void everyStageShouldRecordItsSizes() throws IOException {
+        Path file = folder.newFile("pipeline.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable("lipid.MassConversion");
+            recording.enable("lipid.AdductDetection").withThreshold(Duration.ZERO);
+            recording.enable("lipid.FactInsertion");
+            recording.enable("lipid.RuleFire");
+            recording.start();
+
+            double[] mzs = {700.5, 722.482, 738.4564};
+            MassTransformation.toMonoisotopicMasses(mzs, IonizationMode.POSITIVE,
+                    new double[AdductList.getDescriptors(IonizationMode.POSITIVE).size()][mzs.length]);
+            Annotation annotation = new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1), 700.49999d,
+                    80000.0, 6.5d, IonizationMode.POSITIVE, Set.of(new Peak(700.500, 100000.0), new Peak(722.482, 80000.0)));
+            annotation.detectAdductFromSignals(IonizationMode.POSITIVE, 10d);
+            LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
+            lipidScoreUnit.addAnnotations(new SyntheticDatasetGenerator(1).annotations(20));
+            long firings = lipidScoreUnit.score();
+
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            List<RecordedEvent> conversions = events(events, "lipid.MassConversion");
+            assertEquals(1, conversions.size());
+            assertEquals(3, conversions.get(0).getInt("values"));
+            assertEquals(AdductList.getDescriptors(IonizationMode.POSITIVE).size(), conversions.get(0).getInt("adducts"));
+            List<RecordedEvent> detections = events(events, "lipid.AdductDetection");
+            assertEquals(1, detections.size());
+            assertEquals(2, detections.get(0).getInt("peaks"));
+            assertEquals("[M+H]+", detections.get(0).getString("adduct"));
+            assertEquals(20, events(events, "lipid.FactInsertion").get(0).getInt("annotations"));
+            RecordedEvent fire = events(events, "lipid.RuleFire").get(0);
+            assertEquals(20, fire.getInt("annotations"));
+            assertEquals(firings, fire.getLong("firings"));
+            assertEquals("DROOLS", fire.getString("scoringEngine"));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RuleStatisticsTest {
+
+    private static List<Annotation> carbonSeries(double... rts) {
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < rts.length; i++) {
+            Lipid lipid = new Lipid(i, "TG " + (50 + 2 * i) + ":3", "C0", "TG", 50 + 2 * i, 3);
+            annotations.add(new Annotation(lipid, 800 + i, 1000, rts[i], IonizationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    @Test
+    public void shouldCountTheMatchesAndFiringsOfEveryRule() {
+        RuleStatistics statistics = new RuleStatistics();
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
+        // 9 < 10 < 11 follows the carbon order, 8 is before all of them with the most carbons
+        for (Annotation annotation : carbonSeries(9d, 10d, 11d, 8d)) {
+            lipidScoreUnit.getAnnotations().add(annotation);
+        }
+
+        long firings = lipidScoreUnit.score(statistics);
+
+        RuleStatistics.Snapshot snapshot = statistics.snapshot();
+        assertEquals(6, firings);
+        assertEquals(firings, snapshot.getFirings());
+        assertEquals(3, snapshot.getRule(ElutionOrderScorer.RULE_CARBONS_POSITIVE).getFirings());
+        assertEquals(3, snapshot.getRule(ElutionOrderScorer.RULE_CARBONS_NEGATIVE).getFirings());
+        assertEquals(0, snapshot.getRule(ElutionOrderScorer.RULE_TYPE_POSITIVE).getFirings());
+        assertTrue(snapshot.getRule(ElutionOrderScorer.RULE_CARBONS_POSITIVE).getMatches() >= 3);
+        assertEquals(4, snapshot.getInsertedFacts());
+        assertEquals(1, snapshot.getFireCalls());
+        assertTrue(snapshot.getFireNanos() > 0);
+        assertTrue(snapshot.getFireNanos() >= snapshot.getRule(ElutionOrderScorer.RULE_CARBONS_POSITIVE).getConsequenceNanos());
+        assertEquals(6, snapshot.getRecentFirings().size());
+    }
+
+    @Test
+    public void ringBufferShouldKeepTheMostRecentFirings() throws InterruptedException {
+        RuleStatistics statistics = new RuleStatistics(4);
+        try (LipidScorer lipidScorer = new LipidScorer(ScoringEngine.DROOLS, 1, statistics)) {
+            lipidScorer.score(carbonSeries(9d, 10d, 11d));
+            lipidScorer.score(carbonSeries(11d, 10d, 9d));
+        }
+
+        RuleStatistics.Snapshot snapshot = statistics.snapshot();
+        assertEquals(2, snapshot.getFireCalls());
+        assertEquals(6, snapshot.getFirings());
+        List<RuleStatistics.RecentFiring> recent = snapshot.getRecentFirings();
+        assertEquals(4, recent.size());
+        // The second sample only fires the negative rule
+        for (RuleStatistics.RecentFiring firing : recent.subList(1, 4)) {
+            assertEquals(ElutionOrderScorer.RULE_CARBONS_NEGATIVE, firing.getRule());
+        }
+        for (int i = 1; i < recent.size(); i++) {
+            assertTrue(recent.get(i).getStartNanos() >= recent.get(i - 1).getStartNanos());
+        }
+
+        statistics.reset();
+        assertEquals(0, statistics.snapshot().getFirings());
+        assertTrue(statistics.snapshot().getRecentFirings().isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampleAdductDetectorTest {
+
+    /**
+     * Generated annotations plus two more candidate lipids of every feature, with the same mz and peak group
+     */
+    private static List<Annotation> sample(long seed, IonizationMode ionizationMode) {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(seed, 0.5, ionizationMode);
+        List<Annotation> annotations = new ArrayList<>();
+        for (Annotation annotation : generator.annotations(2000)) {
+            annotations.add(annotation);
+            for (int candidate = 0; candidate < 2; candidate++) {
+                annotations.add(new Annotation(generator.nextLipid(), annotation.getMz(), annotation.getIntensity(),
+                        annotation.getRtMin(), annotation.getIonizationMode(), annotation.getPeakGroup()));
+            }
+        }
+        return annotations;
+    }
+
+    @Test
+    public void shouldDetectTheSameAdductsAsEveryAnnotation() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (IonizationMode ionizationMode : IonizationMode.values()) {
+                for (Deisotoper deisotoper : new Deisotoper[]{null, new Deisotoper(0.01, 2)}) {
+                    List<Annotation> annotations = sample(9, ionizationMode);
+                    List<String> expected = new ArrayList<>();
+                    for (Annotation annotation : annotations) {
+                        expected.add(deisotoper == null
+                                ? annotation.detectAdductFromSignals(ionizationMode, 0.01)
+                                : annotation.detectAdductFromSignals(ionizationMode, 0.01, deisotoper));
+                    }
+
+                    int evaluations = new SampleAdductDetector(0.01, deisotoper, pool, 64).detect(annotations);
+
+                    assertEquals(2000, evaluations);
+                    for (int i = 0; i < annotations.size(); i++) {
+                        assertEquals(expected.get(i), annotations.get(i).getAdduct());
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void groupsOfOneSharedPoolShouldGiveTheSameAdducts() {
+        // Features grouped by RT share the pool of their sample
+        PeakPool pool = PeakPool.of(new double[]{700.500, 722.482, 738.4564, 760.5851, 782.5670},
+                new double[]{100000, 80000, 20000, 90000, 30000});
+        Lipid lipid = new Lipid(1, "PC 34:1", "C42H82NO8P", "PC", 34, 1);
+        List<Annotation> annotations = List.of(
+                new Annotation(lipid, 700.500, 100000, 5, IonizationMode.POSITIVE, pool.slice(0, 3)),
+                new Annotation(lipid, 760.5851, 90000, 6.5, IonizationMode.POSITIVE, pool.slice(3, 5)),
+                new Annotation(lipid, 782.5670, 30000, 6.5, IonizationMode.POSITIVE, pool.slice(3, 5)));
+
+        assertEquals(3, new SampleAdductDetector(0.01).detect(annotations));
+
+        assertEquals("[M+H]+", annotations.get(0).getAdduct());
+        assertEquals("[M+H]+", annotations.get(1).getAdduct());
+        assertEquals("[M+Na]+", annotations.get(2).getAdduct());
+    }
+}
@@ -0,0 +1,46 @@
+package lipid;
+
+import adduct.AdductList;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyntheticDatasetGeneratorTest {
+
+    @Test
+    public void sameSeedShouldGiveTheSameData() {
+        List<Annotation> first = new SyntheticDatasetGenerator(7, 0.5, IonizationMode.POSITIVE).annotations(200);
+        List<Annotation> second = new SyntheticDatasetGenerator(7, 0.5, IonizationMode.POSITIVE).annotations(200);
+
+        assertEquals(first, second);
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getGroupedSignals(), second.get(i).getGroupedSignals());
+            assertEquals(first.get(i).getAdduct(), second.get(i).getAdduct());
+        }
+    }
+
+    @Test
+    public void withoutNoiseTheRtsShouldFollowTheElutionOrder() {
+        List<Annotation> annotations = new SyntheticDatasetGenerator(11).annotations(300);
+
+        ElutionOrderScorer.score(annotations);
+
+        for (Annotation annotation : annotations) {
+            assertEquals(annotation.toString(), annotation.getTotalScoresApplied(), annotation.getScore());
+        }
+    }
+
+    @Test
+    public void groupedPeaksShouldContainTheAdductPartners() {
+        List<Annotation> annotations = new SyntheticDatasetGenerator(3, 0, IonizationMode.NEGATIVE).annotations(100);
+
+        for (Annotation annotation : annotations) {
+            assertTrue(annotation.getPeakGroup().size() >= 4);
+            assertTrue(annotation.getGroupedSignals().contains(new Peak(annotation.getMz(), annotation.getIntensity())));
+            assertEquals(IonizationMode.NEGATIVE, AdductList.getDescriptor(annotation.getAdduct()).getIonizationMode());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package main;
+
+import lipid.Annotation;
+import lipid.IonizationMode;
+import lipid.Lipid;
+import lipid.ScoringEngine;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchScoringDriverTest {
+
+    private static List<Annotation> carbonSeries(int size) {
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Lipid lipid = new Lipid(i, "TG " + (40 + i) + ":3", "C0", "TG", 40 + i, 3);
+            annotations.add(new Annotation(lipid, 800 + i, 1000, 5d + i, IonizationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    @Test
+    public void shouldScoreEverySampleInItsOwnUnit() throws InterruptedException {
+        Map<String, List<Annotation>> samples = new LinkedHashMap<>();
+        for (int s = 0; s < 12; s++) {
+            samples.put("sample" + s, carbonSeries(3 + s));
+        }
+        try (BatchScoringDriver driver = new BatchScoringDriver(ScoringEngine.DROOLS, 3, Duration.ofMinutes(1))) {
+            BatchScoringDriver.BatchResult result = driver.score(samples);
+
+            assertEquals(12, result.count(BatchScoringDriver.Status.COMPLETED));
+            long expectedFirings = 0;
+            int s = 0;
+            for (BatchScoringDriver.SampleResult sampleResult : result.getSampleResults()) {
+                int size = 3 + s;
+                assertEquals("sample" + s, sampleResult.getSampleId());
+                // Every pair of a carbon series follows the elution order
+                assertEquals(size * (size - 1) / 2, sampleResult.getFirings());
+                expectedFirings += sampleResult.getFirings();
+                s++;
+            }
+            assertEquals(expectedFirings, result.getTotalFirings());
+            for (Annotation annotation : samples.get("sample11")) {
+                assertEquals(1.0, annotation.getNormalizedScore(), 0.01);
+                assertEquals(13, annotation.getTotalScoresApplied());
+            }
+        }
+    }
+
+    @Test
+    public void shouldReportTheSamplesThatExceedTheTimeout() throws InterruptedException {
+        Map<String, List<Annotation>> samples = new LinkedHashMap<>();
+        samples.put("large", carbonSeries(300));
+        try (BatchScoringDriver driver = new BatchScoringDriver(ScoringEngine.DROOLS, 1, Duration.ofNanos(1))) {
+            BatchScoringDriver.BatchResult result = driver.score(samples);
+            assertEquals(BatchScoringDriver.Status.TIMED_OUT, result.getSampleResults().get(0).getStatus());
+        }
+    }
+}